@@ -1,11 +1,18 @@
 package com.appdynamics.demo.gasp.adapter;
 
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 
 import com.appdynamics.demo.gasp.model.Restaurant;
+import com.appdynamics.demo.gasp.model.RestaurantRating;
 import com.appdynamics.demo.gasp.model.Review;
+import com.appdynamics.demo.gasp.model.ReviewDetail;
+import com.appdynamics.demo.gasp.model.User;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Copyright (c) 2013 Mark Prichard
@@ -43,6 +50,8 @@ public class DataAdapterQueryTest extends AndroidTestCase {
             for (Review review : reviewList) {
                 reviewData.delete(review);
             }
+            // Ratings (and highest evicted ids) outlive evicted reviews: start from none
+            reviewData.database.delete(GaspSQLiteHelper.RATINGS_TABLE, null, null);
         } catch (Exception e) {
             fail();
         } finally {
@@ -159,6 +168,35 @@ public class DataAdapterQueryTest extends AndroidTestCase {
         }
     }
 
+    public void testGetPage() {
+        final int n = 4;
+
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        reviewData.open();
+        try {
+            // Descending: first page, then the page after its last id
+            List<Review> page = reviewData.getPageDesc(GaspDataAdapter.FIRST_PAGE_DESC, n);
+            assertEquals(n, page.size());
+            assertEquals(MAX_ELEMENTS, page.get(0).getId());
+
+            page = reviewData.getPageDesc(page.get(n - 1).getId(), n);
+            assertEquals(n, page.size());
+            assertEquals(MAX_ELEMENTS - n, page.get(0).getId());
+
+            // Ascending: last page is short
+            page = reviewData.getPageAsc(GaspDataAdapter.FIRST_PAGE_ASC, n);
+            assertEquals(testId, page.get(0).getId());
+
+            page = reviewData.getPageAsc(MAX_ELEMENTS - 2, n);
+            assertEquals(2, page.size());
+            assertEquals(MAX_ELEMENTS, page.get(1).getId());
+        } catch (Exception e) {
+            fail();
+        } finally {
+            reviewData.close();
+        }
+    }
+
     public void testReviewsByRestaurant() {
         ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
         reviewData.open();
@@ -227,4 +265,333 @@ public class DataAdapterQueryTest extends AndroidTestCase {
 
     }
 
+    public void testRestaurantsByPlacesIds() {
+        RestaurantDataAdapter restaurantData = new RestaurantDataAdapter(getContext());
+        restaurantData.open();
+
+        try {
+            List<String> placesIds = new ArrayList<String>();
+            for (int i = 0; i < MAX_ELEMENTS + 2; i++) {
+                placesIds.add(testPlacesId + i);
+            }
+            Map<String, Restaurant> restaurants = restaurantData.findRestaurantsByPlacesIds(placesIds);
+
+            // Check all matches returned, keyed by placesId, and no-match ids omitted
+            assertEquals(MAX_ELEMENTS, restaurants.size());
+            assertEquals(testPlacesId + 0, restaurants.get(testPlacesId + 0).getPlacesId());
+            assertFalse(restaurants.containsKey(testPlacesId + MAX_ELEMENTS));
+        } catch (Exception e) {
+            fail();
+        } finally {
+            restaurantData.close();
+        }
+    }
+
+    public void testForEach() {
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        reviewData.open();
+
+        try {
+            // Aggregate over all rows with a single re-used Review
+            final Review reusable = new Review();
+            final int[] totals = new int[2];
+            reviewData.forEach(reusable, new GaspDataAdapter.RowVisitor<Review>() {
+                @Override
+                public void visit(Review review) {
+                    assertSame(reusable, review);
+                    assertEquals(totals[0] + testId, review.getId());
+                    totals[0]++;
+                    totals[1] += review.getStar();
+                }
+            });
+            assertEquals(MAX_ELEMENTS, totals[0]);
+            assertEquals(MAX_ELEMENTS, totals[1]);
+        } catch (Exception e) {
+            fail();
+        } finally {
+            reviewData.close();
+        }
+    }
+
+    public void testFromCursorColumnOrder() {
+        RestaurantDataAdapter restaurantData = new RestaurantDataAdapter(getContext());
+        restaurantData.open();
+
+        try {
+            // Columns are mapped by name, so a query in a different column order still converts
+            String[] columns = restaurantData.getAllColumns();
+            String[] reversed = new String[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                reversed[i] = columns[columns.length - 1 - i];
+            }
+            List<Restaurant> restaurants = restaurantData.listFromCursor(restaurantData.database.query(
+                    GaspSQLiteHelper.RESTAURANTS_TABLE, reversed, null, null, null, null,
+                    GaspSQLiteHelper.RESTAURANTS_COLUMN_ID));
+            assertEquals(MAX_ELEMENTS, restaurants.size());
+            assertEquals(testId, restaurants.get(0).getId());
+            assertEquals(testPlacesId + 0, restaurants.get(0).getPlacesId());
+        } catch (Exception e) {
+            fail();
+        } finally {
+            restaurantData.close();
+        }
+    }
+
+    public void testReviewDetails() {
+        UserDataAdapter userData = new UserDataAdapter(getContext());
+        userData.open();
+        try {
+            User user = new User();
+            user.setId(testId);
+            user.setName("tester");
+            userData.delete(user);
+            userData.insert(user);
+        } finally {
+            userData.close();
+        }
+
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        reviewData.open();
+
+        try {
+            // Review for a restaurant that has not been synced: kept by the outer join, with no name
+            Review review = new Review();
+            review.setId(testId + MAX_ELEMENTS);
+            review.setRestaurant_id(testId + MAX_ELEMENTS);
+            review.setUser_id(testId);
+            review.setComment("test");
+            review.setStar(1);
+            reviewData.insert(review);
+
+            List<ReviewDetail> page = reviewData.getDetailPageDesc(GaspDataAdapter.FIRST_PAGE_DESC, 2);
+            assertEquals(2, page.size());
+            assertEquals(testId + MAX_ELEMENTS, page.get(0).getId());
+            assertNull(page.get(0).getRestaurantName());
+            assertEquals("tester", page.get(0).getUserName());
+            assertEquals("test", page.get(1).getRestaurantName());
+
+            // Check keyset paging continues from the last id
+            page = reviewData.getDetailPageDesc(page.get(1).getId(), MAX_ELEMENTS);
+            assertEquals(MAX_ELEMENTS - 1, page.size());
+
+            List<ReviewDetail> reviews = reviewData.getLastNDetailsByRestaurant(testId, 2);
+            assertEquals(2, reviews.size());
+            for (ReviewDetail detail : reviews) {
+                assertEquals(testId, detail.getRestaurant_id());
+                assertEquals("test", detail.getRestaurantName());
+            }
+            assert (reviews.get(0).getId() > reviews.get(1).getId());
+        } catch (Exception e) {
+            fail();
+        } finally {
+            reviewData.close();
+        }
+    }
+
+    public void testRestaurantRatings() {
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        reviewData.open();
+
+        try {
+            // Reviews are spread over restaurants testId .. testId + 2: testId gets 4 of 10
+            RestaurantRating rating = reviewData.getRating(testId);
+            assertEquals(4, rating.getReviewCount());
+            assertEquals(1.0f, rating.getAverageStars(), 0.001f);
+
+            List<Integer> ids = new ArrayList<Integer>();
+            for (int i = 0; i < MAX_ELEMENTS; i++) {
+                ids.add(testId + i);
+            }
+            Map<Integer, RestaurantRating> ratings = reviewData.getRatings(ids);
+            assertEquals(3, ratings.size());
+            assertEquals(3, ratings.get(testId + 1).getReviewCount());
+
+            // Check aggregates are maintained on delete
+            List<Review> reviewList = reviewData.getAllByRestaurant(testId);
+            reviewData.delete(reviewList.get(0));
+            assertEquals(3, reviewData.getRating(testId).getReviewCount());
+            assertEquals(3, reviewData.getRating(testId).getStarTotal());
+
+            // Check for null on restaurant with no reviews
+            assertNull(reviewData.getRating(testId + MAX_ELEMENTS));
+        } catch (Exception e) {
+            fail();
+        } finally {
+            reviewData.close();
+        }
+    }
+
+    public void testSearch() {
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        reviewData.open();
+
+        try {
+            Review review = new Review();
+            review.setId(testId + MAX_ELEMENTS);
+            review.setRestaurant_id(testId);
+            review.setUser_id(testId);
+            review.setComment("Great pizza: test it, then test it again");
+            review.setStar(5);
+            reviewData.insert(review);
+
+            // Check ranking: most matching terms first
+            List<SearchHit<Review>> hits = reviewData.search("TEST", MAX_ELEMENTS, 0);
+            assertEquals(MAX_ELEMENTS, hits.size());
+            assertEquals(testId + MAX_ELEMENTS, hits.get(0).getItem().getId());
+            assertTrue(hits.get(0).getSnippet(), hits.get(0).getSnippet().contains("<b>test</b>"));
+
+            // Check paging, prefix matching and punctuation handling
+            assertEquals(1, reviewData.search("tes", MAX_ELEMENTS, MAX_ELEMENTS).size());
+            assertEquals(1, reviewData.search("\"pizza\" gre*", MAX_ELEMENTS, 0).size());
+            assertEquals(0, reviewData.search("  ", MAX_ELEMENTS, 0).size());
+            assertEquals(1, reviewData.search("pizza:test,again", MAX_ELEMENTS, 0).size());
+            assertEquals("it* s* pizza*", GaspDataAdapter.toMatchQuery("It's (pizza)!"));
+
+            // Check the index is maintained on delete
+            reviewData.delete(review);
+            assertEquals(0, reviewData.search("pizza", MAX_ELEMENTS, 0).size());
+        } catch (Exception e) {
+            fail();
+        } finally {
+            reviewData.close();
+        }
+
+        RestaurantDataAdapter restaurantData = new RestaurantDataAdapter(getContext());
+        restaurantData.open();
+        try {
+            assertEquals(MAX_ELEMENTS, restaurantData.search("test", MAX_ELEMENTS + 1, 0).size());
+        } catch (Exception e) {
+            fail();
+        } finally {
+            restaurantData.close();
+        }
+    }
+
+    public void testRestaurantsWithin() {
+        // Reference value from http://en.wikipedia.org/wiki/Geohash
+        assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+
+        RestaurantDataAdapter restaurantData = new RestaurantDataAdapter(getContext());
+        restaurantData.open();
+
+        try {
+            // Two restaurants ~120m apart, one ~10km away
+            double[][] locations = {{37.7760, -122.4194}, {37.7749, -122.4194}, {37.8044, -122.2711}};
+            for (int i = 0; i < locations.length; i++) {
+                Restaurant restaurant = new Restaurant();
+                restaurant.setId(testId + MAX_ELEMENTS + i);
+                restaurant.setName("nearby");
+                restaurant.setPlacesId(testPlacesId + (MAX_ELEMENTS + i));
+                restaurant.setLat(locations[i][0]);
+                restaurant.setLng(locations[i][1]);
+                restaurantData.insert(restaurant);
+            }
+
+            // Check radius filter and nearest-first ordering (restaurants without coordinates are excluded)
+            List<Restaurant> restaurants = restaurantData.findRestaurantsWithin(37.7749, -122.4194, 500);
+            assertEquals(2, restaurants.size());
+            assertEquals(testId + MAX_ELEMENTS + 1, restaurants.get(0).getId());
+            assertEquals(37.7760, restaurants.get(1).getLat(), 0.000001);
+
+            assertEquals(3, restaurantData.findRestaurantsWithin(37.7749, -122.4194, 20000).size());
+        } catch (Exception e) {
+            fail();
+        } finally {
+            restaurantData.close();
+        }
+    }
+
+    public void testRetention() {
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        reviewData.open();
+
+        try {
+            // Restaurant testId has reviews 1, 4, 7, 10; the others have 3 reviews each
+            assertEquals(4, reviewData.evictAllButNewest(2));
+            List<Review> reviewList = reviewData.getAllByRestaurant(testId);
+            assertEquals(2, reviewList.size());
+            assertEquals(7, reviewList.get(0).getId());
+
+            // Check ratings still include evicted reviews
+            assertEquals(4, reviewData.getRating(testId).getReviewCount());
+
+            // Check a re-inserted evicted review is not counted twice, nor uncounted when deleted again
+            Review evicted = new Review();
+            evicted.setId(1);
+            evicted.setRestaurant_id(testId);
+            evicted.setUser_id(testId);
+            evicted.setComment("test");
+            evicted.setStar(1);
+            reviewData.insert(evicted);
+            assertEquals(4, reviewData.getRating(testId).getReviewCount());
+            reviewData.delete(evicted);
+            assertEquals(4, reviewData.getRating(testId).getReviewCount());
+
+            // Reviews 5, 6 and 7 are below the watermark
+            assertEquals(3, reviewData.evictOlderThan(8));
+
+            // Check newer reviews are still counted
+            Review newer = new Review();
+            newer.setId(100);
+            newer.setRestaurant_id(testId);
+            newer.setUser_id(testId);
+            newer.setComment("test");
+            newer.setStar(1);
+            reviewData.insert(newer);
+            assertEquals(5, reviewData.getRating(testId).getReviewCount());
+
+            // Check evicting every review leaves the sync watermark alone
+            long lastSyncedId = reviewData.getSyncState().getLastId();
+            assertEquals(4, reviewData.evictOlderThan(Long.MAX_VALUE));
+            assertEquals(0, reviewData.getLastId());
+            assertEquals(lastSyncedId, reviewData.getSyncState().getLastId());
+        } catch (Exception e) {
+            fail();
+        } finally {
+            reviewData.close();
+        }
+
+        assertTrue(new GaspDatabaseMaintenance(getContext()).vacuum() >= 0);
+    }
+
+    public void testQueryPlanUsesIndexes() {
+        RestaurantDataAdapter restaurantData = new RestaurantDataAdapter(getContext());
+        restaurantData.open();
+        try {
+            String plan = explainQueryPlan(restaurantData.database,
+                    "SELECT * FROM " + GaspSQLiteHelper.RESTAURANTS_TABLE
+                            + " WHERE " + GaspSQLiteHelper.RESTAURANTS_COLUMN_PLACESID + " = ?",
+                    testPlacesId);
+            assertTrue(plan, plan.contains(GaspSQLiteHelper.RESTAURANTS_INDEX_PLACESID));
+        } finally {
+            restaurantData.close();
+        }
+
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        reviewData.open();
+        try {
+            String plan = explainQueryPlan(reviewData.database,
+                    "SELECT * FROM " + GaspSQLiteHelper.REVIEWS_TABLE
+                            + " WHERE " + GaspSQLiteHelper.REVIEWS_COLUMN_RESTAURANT_ID + " = ?"
+                            + " ORDER BY " + GaspSQLiteHelper.REVIEWS_COLUMN_ID + " DESC LIMIT 10",
+                    String.valueOf(testId));
+            assertTrue(plan, plan.contains(GaspSQLiteHelper.REVIEWS_INDEX_RESTAURANT_ID));
+        } finally {
+            reviewData.close();
+        }
+    }
+
+    private static String explainQueryPlan(SQLiteDatabase database, String query, String arg) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + query, new String[]{arg});
+        try {
+            int detail = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
 }
@@ -6,6 +6,8 @@ import com.appdynamics.demo.gasp.model.Restaurant;
 import com.appdynamics.demo.gasp.model.Review;
 import com.appdynamics.demo.gasp.model.User;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -212,4 +214,205 @@ public class DatabaseTest extends AndroidTestCase {
         userData.getLastId();
         userData.close();
     }
+
+    public void testInsertAll() {
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        List<Review> reviews = new ArrayList<Review>();
+
+        for (int i = 0; i < 3; i++) {
+            Review review = new Review();
+            review.setId(testId + i);
+            review.setRestaurant_id(testRestaurantId);
+            review.setUser_id(testUserId);
+            review.setComment(testComment);
+            review.setStar(testStar);
+            reviews.add(review);
+        }
+        // Duplicate id: should be skipped without aborting the batch
+        reviews.add(reviews.get(0));
+
+        reviewData.open();
+        InsertResult result = reviewData.insertAll(reviews);
+        assertEquals(3, result.getInserted());
+        assertEquals(1, result.getSkipped());
+
+        List<Review> reviewList = reviewData.getAll();
+        assertEquals(reviewList.size(), 3);
+        assertEquals(reviewList.get(2).getComment(), testComment);
+        assertEquals(3, reviewData.getLastId());
+        reviewData.close();
+    }
+
+    public void testSyncState() {
+        UserDataAdapter userData = new UserDataAdapter(getContext());
+        userData.open();
+
+        try {
+            SyncState syncState = userData.getSyncState();
+            long lastId = syncState.getLastId();
+            long recordCount = syncState.getRecordCount();
+
+            List<User> users = new ArrayList<User>();
+            for (int i = 1; i <= 3; i++) {
+                User user = new User();
+                user.setId((int) lastId + i);
+                user.setName(testName);
+                users.add(user);
+            }
+            InsertResult result = userData.insertAll(users.iterator(), syncState);
+            assertEquals(3, result.getInserted());
+
+            // Check sync state was saved with the rows
+            SyncState saved = userData.getSyncState();
+            assertEquals(lastId + 3, saved.getLastId());
+            assertEquals(recordCount + 3, saved.getRecordCount());
+            assertTrue(saved.getLastSyncTime() > 0);
+
+            saved.setEtag(testPlacesId);
+            userData.saveSyncState(saved);
+            assertEquals(testPlacesId, userData.getSyncState().getEtag());
+
+            // Batched insert: one transaction per 2 rows, duplicates skipped
+            users.clear();
+            for (int i = 3; i <= 7; i++) {
+                User user = new User();
+                user.setId((int) lastId + i);
+                user.setName(testName);
+                users.add(user);
+            }
+            result = userData.insertAll(users.iterator(), saved, 2);
+            assertEquals(4, result.getInserted());
+            assertEquals(1, result.getSkipped());
+
+            saved = userData.getSyncState();
+            assertEquals(lastId + 7, saved.getLastId());
+            assertEquals(recordCount + 7, saved.getRecordCount());
+        } finally {
+            userData.close();
+        }
+    }
+
+    public void testExists() {
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        IdIndex index = IdIndex.forTable(GaspSQLiteHelper.REVIEWS_TABLE);
+        reviewData.open();
+
+        try {
+            Review review = newReview(testId);
+
+            // Loaded from the (empty) table on first use
+            int hits = index.getHits();
+            int misses = index.getMisses();
+            assertFalse(reviewData.exists(testId));
+
+            // Committed inserts are added
+            reviewData.insertAll(Collections.singletonList(review));
+            assertTrue(reviewData.exists(testId));
+            assertFalse(reviewData.exists(testId + 1));
+            reviewData.insert(newReview(testId + 1));
+            assertTrue(reviewData.exists(testId + 1));
+
+            assertEquals(hits + 2, index.getHits());
+            assertEquals(misses + 2, index.getMisses());
+
+            // Deleted rows are not reported
+            reviewData.delete(review);
+            assertFalse(reviewData.exists(testId));
+            assertTrue(reviewData.exists(testId + 1));
+
+            // Inserts in an outer transaction are added when it commits, and not if it rolls back
+            reviewData.beginTransaction();
+            try {
+                reviewData.insertAll(Collections.singletonList(newReview(testId + 2)));
+                reviewData.insert(newReview(testId + 3));
+            } finally {
+                reviewData.endTransaction(true);
+            }
+            assertTrue(reviewData.exists(testId + 2));
+            assertTrue(reviewData.exists(testId + 3));
+
+            reviewData.beginTransaction();
+            try {
+                reviewData.insert(newReview(testId + 4));
+            } finally {
+                reviewData.endTransaction(false);
+            }
+            assertFalse(reviewData.exists(testId + 4));
+        } finally {
+            reviewData.close();
+        }
+    }
+
+    public void testRestaurantCacheAfterCommit() {
+        RestaurantDataAdapter restaurantData = new RestaurantDataAdapter(getContext());
+        RestaurantCache cache = RestaurantCache.getInstance();
+        restaurantData.open();
+
+        try {
+            Restaurant restaurant = new Restaurant();
+            restaurant.setId(testId);
+            restaurant.setName(testName);
+            restaurant.setWebsite(testWebsite);
+            restaurant.setPlacesId(testPlacesId3);
+
+            // Rolled back: never cached
+            restaurantData.beginTransaction();
+            try {
+                restaurantData.insert(restaurant);
+                assertNull(cache.get(testPlacesId3));
+            } finally {
+                restaurantData.endTransaction(false);
+            }
+            assertNull(restaurantData.findRestaurantByPlacesId(testPlacesId3));
+            assertNull(cache.get(testPlacesId3));
+
+            // Nested: cached when the outer transaction commits
+            restaurantData.beginTransaction();
+            try {
+                restaurantData.insertAll(Collections.singletonList(restaurant));
+                assertNull(cache.get(testPlacesId3));
+            } finally {
+                restaurantData.endTransaction(true);
+            }
+            assertNotNull(cache.get(testPlacesId3));
+        } finally {
+            restaurantData.close();
+        }
+    }
+
+    public void testRestaurantCacheEviction() {
+        RestaurantCache cache = RestaurantCache.getInstance();
+
+        Restaurant first = newRestaurant(0);
+        cache.put(first);
+        for (int i = 1; i <= 1000; i++) {
+            cache.put(newRestaurant(i));
+            // Keep the first restaurant recently used
+            assertNotNull(cache.get(first.getPlacesId()));
+        }
+
+        // The least recently used restaurant was evicted, and new ones are still cached
+        assertNotNull(cache.get(first.getPlacesId()));
+        assertNull(cache.get(newRestaurant(1).getPlacesId()));
+        assertNotNull(cache.get(newRestaurant(1000).getPlacesId()));
+        assertFalse(cache.isComplete());
+    }
+
+    private Restaurant newRestaurant(int id) {
+        Restaurant restaurant = new Restaurant();
+        restaurant.setId(id);
+        restaurant.setName(testName);
+        restaurant.setPlacesId("evict-" + id);
+        return restaurant;
+    }
+
+    private Review newReview(int id) {
+        Review review = new Review();
+        review.setId(id);
+        review.setRestaurant_id(testRestaurantId);
+        review.setUser_id(testUserId);
+        review.setComment(testComment);
+        review.setStar(testStar);
+        return review;
+    }
 }
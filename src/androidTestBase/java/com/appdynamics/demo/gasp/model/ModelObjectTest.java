@@ -27,6 +27,8 @@ public class ModelObjectTest extends TestCase {
     private static final String testName = "Test Name";
     private static final String testWebsite = "http://www.restaurant.com/";
     private static final String testPlacesId = "1234567890";
+    private static final Double testLat = 37.7749;
+    private static final Double testLng = -122.4194;
 
     protected void setUp() {}
     protected void tearDown() {}
@@ -58,12 +60,18 @@ public class ModelObjectTest extends TestCase {
         restaurant.setName(testName);
         restaurant.setWebsite(testWebsite);
         restaurant.setPlacesId(testPlacesId);
+        assertFalse(restaurant.hasLocation());
+        restaurant.setLat(testLat);
+        restaurant.setLng(testLng);
 
         assertEquals(restaurant.getId(), testId);
         assertEquals(restaurant.getName(), testName);
         assertEquals(restaurant.getWebsite(), testWebsite);
         assertEquals(restaurant.getUrl(), "/restaurants/" + testId);
         assertEquals(restaurant.getPlacesId(), testPlacesId);
+        assertTrue(restaurant.hasLocation());
+        assertEquals(restaurant.getLat(), testLat);
+        assertEquals(restaurant.getLng(), testLng);
         assertEquals(restaurant.toString(), "Restaurant #" + testId + ": " + testName);
     }
 
@@ -0,0 +1,148 @@
+package com.appdynamics.demo.gasp.service;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.appdynamics.demo.gasp.model.Review;
+import com.appdynamics.demo.gasp.utils.HttpCompression;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Copyright (c) 2013 Mark Prichard
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Tests HttpCompression against a local stand-in server that gzips responses
+ */
+public class CompressionTest extends AndroidTestCase implements IRESTListener {
+    private static final String TAG = CompressionTest.class.getName();
+
+    private static final int testReviews = 500;
+
+    private List<Review> reviews;
+    private StubRestServer server;
+    private CountDownLatch signal;
+    private List<Review> received;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        reviews = new ArrayList<Review>();
+        for (int i = 1; i <= testReviews; i++) {
+            Review review = new Review();
+            review.setId(i);
+            review.setRestaurant_id(i % 10 + 1);
+            review.setUser_id(i % 5 + 1);
+            review.setStar(i % 5 + 1);
+            review.setComment("Great food, friendly staff and a lovely terrace #" + i);
+            reviews.add(review);
+        }
+        server = new StubRestServer(reviews);
+        server.setGzip(true);
+    }
+
+    protected void tearDown() throws Exception {
+        server.close();
+        super.tearDown();
+    }
+
+    private List<Review> parse(String json) {
+        Type type = new TypeToken<List<Review>>() {}.getType();
+        return new Gson().fromJson(json, type);
+    }
+
+    public void testHttpClientGzip() throws InterruptedException {
+        long receivedBefore = HttpCompression.getBytesReceived();
+        long decodedBefore = HttpCompression.getBytesDecoded();
+
+        signal = new CountDownLatch(1);
+        new AsyncRESTClient(server.getUri(), this).getAll();
+        assertTrue(signal.await(20, TimeUnit.SECONDS));
+        assertNotNull(received);
+        assertEquals(testReviews, received.size());
+
+        long bytesReceived = HttpCompression.getBytesReceived() - receivedBefore;
+        long bytesDecoded = HttpCompression.getBytesDecoded() - decodedBefore;
+        Log.d(TAG, "Received " + bytesReceived + " bytes, decoded " + bytesDecoded + " bytes");
+        assertTrue(bytesReceived > 0);
+        assertTrue(bytesReceived * 4 < bytesDecoded);
+    }
+
+    public void testUrlConnectionGzip() throws Exception {
+        long receivedBefore = HttpCompression.getBytesReceived();
+        long decodedBefore = HttpCompression.getBytesDecoded();
+
+        HttpURLConnection conn = (HttpURLConnection) new URL(server.getUri().toString()).openConnection();
+        StringBuilder json = new StringBuilder();
+        try {
+            HttpCompression.acceptGzip(conn);
+            assertEquals(HttpCompression.ENCODING_GZIP, conn.getContentEncoding());
+
+            InputStreamReader in = new InputStreamReader(HttpCompression.getInputStream(conn), "UTF-8");
+            int read;
+            char[] buff = new char[1024];
+            while ((read = in.read(buff)) != -1) {
+                json.append(buff, 0, read);
+            }
+            in.close();
+        } finally {
+            conn.disconnect();
+        }
+        assertEquals(testReviews, parse(json.toString()).size());
+        assertTrue((HttpCompression.getBytesReceived() - receivedBefore) * 4
+                < HttpCompression.getBytesDecoded() - decodedBefore);
+    }
+
+    public void testGzipRequestBody() throws Exception {
+        long encodedBefore = HttpCompression.getBytesEncoded();
+        long sentBefore = HttpCompression.getBytesSent();
+
+        byte[] body = new Gson().toJson(reviews).getBytes("UTF-8");
+        byte[] compressed = HttpCompression.gzip(body);
+        assertTrue(compressed.length < body.length);
+
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        in.close();
+        assertEquals(new String(body, "UTF-8"), out.toString("UTF-8"));
+
+        assertEquals(body.length, HttpCompression.getBytesEncoded() - encodedBefore);
+        assertEquals(compressed.length, HttpCompression.getBytesSent() - sentBefore);
+    }
+
+    @Override
+    public void onCompleted(String result) {
+        received = (result != null) ? parse(result) : null;
+        signal.countDown();
+    }
+}
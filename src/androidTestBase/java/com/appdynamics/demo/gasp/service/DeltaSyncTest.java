@@ -0,0 +1,148 @@
+package com.appdynamics.demo.gasp.service;
+
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.appdynamics.demo.gasp.adapter.GaspTables;
+import com.appdynamics.demo.gasp.adapter.ReviewDataAdapter;
+import com.appdynamics.demo.gasp.adapter.SyncState;
+import com.appdynamics.demo.gasp.model.Review;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright (c) 2013 Mark Prichard
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Tests delta sync (PagedSync with ?after=) against a local stand-in server
+ */
+public class DeltaSyncTest extends AndroidTestCase implements PagedSync.Listener<Review> {
+    private static final String TAG = DeltaSyncTest.class.getName();
+
+    private static final int serverReviews = 1000;
+    private static final int newReviews = 10;
+
+    private StubRestServer server;
+    private List<Review> reviews;
+    private long lastId;
+    private long recordCount;
+    private int inserted;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        PreferenceManager.getDefaultSharedPreferences(getContext()).edit()
+                .remove(PagedSync.PAGE_SIZE_KEY + GaspTables.REVIEWS)
+                .commit();
+
+        // Server rows follow on from anything already in the local database
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        reviewData.open();
+        try {
+            SyncState syncState = reviewData.getSyncState();
+            lastId = Math.max(syncState.getLastId(), reviewData.getLastId());
+            recordCount = syncState.getRecordCount();
+        } finally {
+            reviewData.close();
+        }
+
+        reviews = new ArrayList<Review>();
+        addServerReviews(serverReviews);
+        server = new StubRestServer(reviews);
+    }
+
+    protected void tearDown() throws Exception {
+        server.close();
+        super.tearDown();
+    }
+
+    private void addServerReviews(int count) {
+        long firstId = lastId + reviews.size() + 1;
+        for (int i = 0; i < count; i++) {
+            Review review = new Review();
+            review.setId((int) firstId + i);
+            review.setRestaurant_id(i % 10 + 1);
+            review.setUser_id(i % 5 + 1);
+            review.setStar(i % 5 + 1);
+            review.setComment("Review comment #" + i);
+            reviews.add(review);
+        }
+    }
+
+    private void sync() {
+        new PagedSync<Review>(getContext(), server.getUri(), new ReviewDataAdapter(getContext()),
+                Review.class, this).run();
+    }
+
+    private long getRecordCount() {
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        reviewData.open();
+        try {
+            return reviewData.getSyncState().getRecordCount();
+        } finally {
+            reviewData.close();
+        }
+    }
+
+    public void testDeltaSync() {
+        sync();
+        long fullBytes = server.getBytesSent();
+        assertEquals(serverReviews, inserted);
+
+        addServerReviews(newReviews);
+        server.resetBytesSent();
+        sync();
+        long deltaBytes = server.getBytesSent();
+        assertEquals(newReviews, inserted);
+
+        // Only the rows after the last synced id were requested
+        int pageSize = PreferenceManager.getDefaultSharedPreferences(getContext())
+                .getInt(PagedSync.PAGE_SIZE_KEY + GaspTables.REVIEWS, PagedSync.DEFAULT_PAGE_SIZE);
+        Uri pageUri = new AsyncRESTClient(server.getUri(), (HttpValidators) null, null)
+                .getPageUri(lastId + serverReviews, pageSize);
+        assertEquals(pageUri.getEncodedPath() + "?" + pageUri.getEncodedQuery(), server.getLastRequest());
+
+        Log.d(TAG, "Full sync: " + fullBytes + " bytes, delta sync: " + deltaBytes + " bytes");
+        assertTrue(deltaBytes * 10 < fullBytes);
+    }
+
+    public void testDeltaSyncFallback() {
+        server.setHonourAfter(false);
+
+        sync();
+        assertEquals(serverReviews, inserted);
+
+        // The whole collection again: only the new rows are stored
+        addServerReviews(newReviews);
+        sync();
+        assertEquals(newReviews, inserted);
+        assertEquals(recordCount + serverReviews + newReviews, getRecordCount());
+    }
+
+    @Override
+    public void onRowSynced(Review review) {
+        assertTrue(review.getId() > lastId);
+    }
+
+    @Override
+    public void onSyncCompleted(boolean success, int inserted) {
+        assertTrue(success);
+        this.inserted = inserted;
+    }
+}
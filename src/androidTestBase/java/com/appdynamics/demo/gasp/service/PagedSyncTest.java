@@ -0,0 +1,205 @@
+package com.appdynamics.demo.gasp.service;
+
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.appdynamics.demo.gasp.adapter.GaspTables;
+import com.appdynamics.demo.gasp.adapter.ReviewDataAdapter;
+import com.appdynamics.demo.gasp.adapter.SyncState;
+import com.appdynamics.demo.gasp.model.Review;
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Copyright (c) 2013 Mark Prichard
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Tests PagedSync against a local stand-in server
+ */
+public class PagedSyncTest extends AndroidTestCase implements PagedSync.Listener<Review> {
+
+    private static final int testReviews = 1000;
+
+    private StubRestServer server;
+    private List<Review> serverReviews;
+    private long lastId;
+    private long recordCount;
+
+    private CountDownLatch signal;
+    private boolean success;
+    private int inserted;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // Start each test from the default page size
+        PreferenceManager.getDefaultSharedPreferences(getContext()).edit()
+                .remove(PagedSync.PAGE_SIZE_KEY + GaspTables.REVIEWS)
+                .commit();
+
+        // Server rows follow on from anything already in the local database
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        reviewData.open();
+        try {
+            SyncState syncState = reviewData.getSyncState();
+            lastId = Math.max(syncState.getLastId(), reviewData.getLastId());
+            recordCount = syncState.getRecordCount();
+        } finally {
+            reviewData.close();
+        }
+
+        serverReviews = new ArrayList<Review>();
+        addServerReviews(testReviews);
+        server = new StubRestServer(serverReviews);
+    }
+
+    protected void tearDown() throws Exception {
+        server.close();
+        super.tearDown();
+    }
+
+    private void addServerReviews(int count) {
+        long firstId = lastId + serverReviews.size() + 1;
+        for (int i = 0; i < count; i++) {
+            Review review = new Review();
+            review.setId((int) firstId + i);
+            review.setRestaurant_id(1);
+            review.setUser_id(1);
+            review.setStar(i % 5 + 1);
+            review.setComment("Paged review #" + i);
+            serverReviews.add(review);
+        }
+    }
+
+    private void sync() {
+        // Blocking, retries included: the listener has been called when run() returns
+        signal = new CountDownLatch(1);
+        new PagedSync<Review>(getContext(), server.getUri(), new ReviewDataAdapter(getContext()),
+                Review.class, this).run();
+        assertEquals(0, signal.getCount());
+    }
+
+    private SyncState getSyncState() {
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        reviewData.open();
+        try {
+            return reviewData.getSyncState();
+        } finally {
+            reviewData.close();
+        }
+    }
+
+    public void testPagedSync() {
+        sync();
+        assertTrue(success);
+        assertEquals(testReviews, inserted);
+        assertTrue(server.getRequests() > 1);
+
+        SyncState syncState = getSyncState();
+        assertEquals(lastId + testReviews, syncState.getLastId());
+        assertEquals(recordCount + testReviews, syncState.getRecordCount());
+
+        // A later sync resumes after the last stored page
+        addServerReviews(10);
+        sync();
+        assertTrue(success);
+        assertEquals(10, inserted);
+        assertTrue(server.getLastRequest().contains(AsyncRESTClient.PARAM_AFTER + "=" + (lastId + testReviews)));
+        assertEquals(lastId + testReviews + 10, getSyncState().getLastId());
+    }
+
+    public void testRetryPage() throws Exception {
+        // Drop the connection during the second page: only that page is fetched again
+        server.setFailRequest(2);
+        sync();
+        assertTrue(success);
+        assertEquals(testReviews, inserted);
+
+        SyncState syncState = getSyncState();
+        assertEquals(lastId + testReviews, syncState.getLastId());
+        assertEquals(recordCount + testReviews, syncState.getRecordCount());
+
+        // Paged bytes, including the failed half page, against the body of one full download
+        long fullBytes = new Gson().toJson(serverReviews).getBytes("UTF-8").length;
+        assertTrue(server.getBytesSent() < fullBytes * 3 / 2);
+    }
+
+    public void testNotModified() {
+        sync();
+        assertEquals(testReviews, inserted);
+
+        // Nothing new: an empty page, then the same page again as a conditional GET
+        sync();
+        assertTrue(success);
+        assertEquals(0, inserted);
+        int notModified = server.getNotModified();
+
+        sync();
+        assertTrue(success);
+        assertEquals(0, inserted);
+        assertEquals(notModified + 1, server.getNotModified());
+
+        // New rows change the response
+        addServerReviews(10);
+        sync();
+        assertTrue(success);
+        assertEquals(10, inserted);
+        assertEquals(notModified + 1, server.getNotModified());
+    }
+
+    public void testRun() {
+        // Blocking: every page is stored and the listener called before run() returns
+        signal = new CountDownLatch(1);
+        new PagedSync<Review>(getContext(), server.getUri(), new ReviewDataAdapter(getContext()),
+                Review.class, this).run();
+        assertEquals(0, signal.getCount());
+        assertTrue(success);
+        assertEquals(testReviews, inserted);
+        assertTrue(server.getRequests() > 1);
+        assertEquals(lastId + testReviews, getSyncState().getLastId());
+    }
+
+    public void testNextPageSize() {
+        int pageSize = PagedSync.DEFAULT_PAGE_SIZE;
+
+        // On target: unchanged
+        assertEquals(pageSize, PagedSync.nextPageSize(pageSize, PagedSync.TARGET_PAGE_MILLIS));
+
+        // Fast or slow pages: at most double or halve
+        assertEquals(pageSize * 2, PagedSync.nextPageSize(pageSize, 1));
+        assertEquals(pageSize * 2, PagedSync.nextPageSize(pageSize, 0));
+        assertEquals(pageSize / 2, PagedSync.nextPageSize(pageSize, PagedSync.TARGET_PAGE_MILLIS * 10));
+        assertEquals(pageSize * 4 / 5, PagedSync.nextPageSize(pageSize, PagedSync.TARGET_PAGE_MILLIS * 5 / 4));
+
+        // Bounds
+        assertEquals(PagedSync.MAX_PAGE_SIZE, PagedSync.nextPageSize(PagedSync.MAX_PAGE_SIZE, 1));
+        assertEquals(PagedSync.MIN_PAGE_SIZE, PagedSync.nextPageSize(PagedSync.MIN_PAGE_SIZE, Long.MAX_VALUE));
+    }
+
+    @Override
+    public void onRowSynced(Review review) {
+    }
+
+    @Override
+    public void onSyncCompleted(boolean success, int inserted) {
+        this.success = success;
+        this.inserted = inserted;
+        signal.countDown();
+    }
+}
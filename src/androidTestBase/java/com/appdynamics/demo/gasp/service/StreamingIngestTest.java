@@ -0,0 +1,195 @@
+package com.appdynamics.demo.gasp.service;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.appdynamics.demo.gasp.model.Review;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copyright (c) 2013 Mark Prichard
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Tests JsonArrayIterator and compares the peak heap used to ingest a large review list
+ * buffered (String + Gson List, as with BasicResponseHandler) and streamed
+ */
+public class StreamingIngestTest extends AndroidTestCase {
+    private static final String TAG = StreamingIngestTest.class.getName();
+
+    private static final int testReviews = 20000;
+    private static final int testLastId = 100;
+    private static final String testComment =
+            "The quick brown fox jumps over the lazy dog, then orders the tasting menu and a bottle of wine. ";
+
+    private final Gson gson = new Gson();
+    private File jsonFile;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        jsonFile = new File(getContext().getCacheDir(), "reviews.json");
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(jsonFile), "UTF-8"));
+        try {
+            writer.beginArray();
+            for (int i = 1; i <= testReviews; i++) {
+                Review review = new Review();
+                review.setId(i);
+                review.setRestaurant_id(i % 100 + 1);
+                review.setUser_id(i % 50 + 1);
+                review.setStar(i % 5 + 1);
+                review.setComment(testComment + i);
+                gson.toJson(review, Review.class, writer);
+            }
+            writer.endArray();
+        } finally {
+            writer.close();
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        jsonFile.delete();
+        super.tearDown();
+    }
+
+    private Reader openReader() throws IOException {
+        return new InputStreamReader(new FileInputStream(jsonFile), "UTF-8");
+    }
+
+    public void testJsonArrayIterator() throws IOException {
+        Reader reader = openReader();
+        try {
+            JsonArrayIterator<Review> reviews = new JsonArrayIterator<Review>(reader, gson, Review.class, testLastId);
+            int expectedId = testLastId + 1;
+            while (reviews.hasNext()) {
+                assertEquals(expectedId++, reviews.next().getId());
+            }
+            assertEquals(testReviews + 1, expectedId);
+            assertEquals(testReviews, reviews.getRead());
+            assertEquals(testLastId, reviews.getFiltered());
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testPeakHeap() throws Exception {
+        long bufferedPeak = measurePeakHeap(new Ingest() {
+            @Override
+            public int run() throws IOException {
+                // As before: the whole body as a String, then the whole List, then the new rows
+                StringBuilder body = new StringBuilder();
+                char[] buffer = new char[4096];
+                Reader reader = openReader();
+                try {
+                    int n;
+                    while ((n = reader.read(buffer)) != -1) {
+                        body.append(buffer, 0, n);
+                    }
+                } finally {
+                    reader.close();
+                }
+                Type type = new TypeToken<List<Review>>() {}.getType();
+                List<Review> reviews = gson.fromJson(body.toString(), type);
+                List<Review> newReviews = new ArrayList<Review>();
+                for (Review review : reviews) {
+                    if (review.getId() > testLastId) {
+                        newReviews.add(review);
+                    }
+                }
+                return consume(newReviews.iterator());
+            }
+        });
+
+        long streamingPeak = measurePeakHeap(new Ingest() {
+            @Override
+            public int run() throws IOException {
+                Reader reader = openReader();
+                try {
+                    return consume(new JsonArrayIterator<Review>(reader, gson, Review.class, testLastId));
+                } finally {
+                    reader.close();
+                }
+            }
+        });
+
+        Log.d(TAG, "Peak heap for " + testReviews + " reviews (" + jsonFile.length() + " bytes): buffered "
+                + bufferedPeak / 1024 + " KB, streaming " + streamingPeak / 1024 + " KB");
+        assertTrue(streamingPeak < bufferedPeak);
+    }
+
+    private interface Ingest {
+        int run() throws IOException;
+    }
+
+    // Stands in for the batched database writer, which holds one row at a time in both cases
+    private static int consume(Iterator<Review> reviews) {
+        int count = 0;
+        while (reviews.hasNext()) {
+            reviews.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Run an ingest while a sampler thread records the highest heap usage above the starting point
+     */
+    private long measurePeakHeap(Ingest ingest) throws Exception {
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        Thread.sleep(100);
+        final long baseline = runtime.totalMemory() - runtime.freeMemory();
+        final AtomicLong peak = new AtomicLong();
+        final AtomicBoolean done = new AtomicBoolean();
+
+        Thread sampler = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    peak.set(Math.max(peak.get(), runtime.totalMemory() - runtime.freeMemory() - baseline));
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        sampler.start();
+        try {
+            assertEquals(testReviews - testLastId, ingest.run());
+        } finally {
+            done.set(true);
+            sampler.join();
+        }
+        return peak.get();
+    }
+}
@@ -0,0 +1,304 @@
+package com.appdynamics.demo.gasp.service;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.appdynamics.demo.gasp.model.GaspDataObject;
+import com.appdynamics.demo.gasp.model.Review;
+import com.google.gson.Gson;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Copyright (c) 2013 Mark Prichard
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Minimal local stand-in for the Gasp server /reviews endpoint (and others added with
+ * addCollection()), so that the sync client can be exercised without network access
+ */
+class StubRestServer implements Runnable {
+    private static final String TAG = StubRestServer.class.getName();
+
+    private final Map<String, List<? extends GaspDataObject>> mCollections =
+            new ConcurrentHashMap<String, List<? extends GaspDataObject>>();
+    private final ServerSocket mServerSocket;
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    private volatile boolean mHonourAfter = true;
+    private volatile boolean mSupportIds = true;
+    private volatile boolean mIgnoreIds = false;
+    private volatile String mLastRequest;
+    private volatile int mRequests = 0;
+    private volatile int mFailRequest = 0;
+    private volatile int mNotModified = 0;
+    private volatile boolean mGzip = false;
+
+    StubRestServer(List<Review> reviews) throws IOException {
+        mCollections.put("/reviews", reviews);
+        this.mServerSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+        new Thread(this, TAG).start();
+    }
+
+    Uri getUri() {
+        return Uri.parse(getServerUri() + "reviews");
+    }
+
+    /**
+     * @return Server URI, as in the Gasp server URI preference
+     */
+    String getServerUri() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/";
+    }
+
+    /**
+     * Serve another collection, e.g. "restaurants"
+     */
+    void addCollection(String name, List<? extends GaspDataObject> collection) {
+        mCollections.put("/" + name, collection);
+    }
+
+    /**
+     * Gzip response bodies for clients that send Accept-Encoding: gzip
+     */
+    void setGzip(boolean gzip) {
+        this.mGzip = gzip;
+    }
+
+    /**
+     * Answer delta sync requests (?after=10&limit=100), or ignore both parameters and send the whole collection
+     */
+    void setHonourAfter(boolean honourAfter) {
+        this.mHonourAfter = honourAfter;
+    }
+
+    /**
+     * Answer batched requests (?ids=1,2,3), or reject them with 400 Bad Request
+     */
+    void setSupportIds(boolean supportIds) {
+        this.mSupportIds = supportIds;
+    }
+
+    /**
+     * Answer batched requests with the whole collection, like a server that does not know the ids parameter
+     */
+    void setIgnoreIds(boolean ignoreIds) {
+        this.mIgnoreIds = ignoreIds;
+    }
+
+    /**
+     * Drop the connection half way through the response body of the given request
+     *
+     * @param request Request number, counting from 1
+     */
+    void setFailRequest(int request) {
+        this.mFailRequest = request;
+    }
+
+    /**
+     * @return Number of 304 Not Modified responses sent
+     */
+    int getNotModified() {
+        return mNotModified;
+    }
+
+    int getRequests() {
+        return mRequests;
+    }
+
+    long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    void resetBytesSent() {
+        mBytesSent.set(0);
+    }
+
+    String getLastRequest() {
+        return mLastRequest;
+    }
+
+    void close() {
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                Socket socket = mServerSocket.accept();
+                try {
+                    handle(socket);
+                } finally {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                if (!mServerSocket.isClosed()) {
+                    Log.e(TAG, "Stub server failed", e);
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+
+        // Request line, e.g. "GET /reviews?after=10 HTTP/1.1", then headers up to a blank line
+        String requestLine = reader.readLine();
+        if (requestLine == null) {
+            return;
+        }
+        String line;
+        String ifNoneMatch = null;
+        boolean acceptGzip = false;
+        while ((line = reader.readLine()) != null && line.length() > 0) {
+            String header = line.toLowerCase(Locale.US);
+            if (header.startsWith("if-none-match:")) {
+                ifNoneMatch = line.substring(line.indexOf(':') + 1).trim();
+            } else if (header.startsWith("accept-encoding:") && header.contains("gzip")) {
+                acceptGzip = true;
+            }
+        }
+
+        String path = requestLine.split(" ")[1];
+        mLastRequest = path;
+        int request = ++mRequests;
+
+        Uri uri = Uri.parse("http://127.0.0.1" + path);
+        long after = 0;
+        String afterParam = uri.getQueryParameter(AsyncRESTClient.PARAM_AFTER);
+        if (mHonourAfter && afterParam != null) {
+            after = Long.parseLong(afterParam);
+        }
+        String limitParam = uri.getQueryParameter(PagedSync.PARAM_LIMIT);
+        int limit = (mHonourAfter && limitParam != null) ? Integer.parseInt(limitParam) : Integer.MAX_VALUE;
+
+        String idsParam = mIgnoreIds ? null : uri.getQueryParameter(AsyncRESTClient.PARAM_IDS);
+
+        OutputStream out = socket.getOutputStream();
+        List<? extends GaspDataObject> collection = mCollections.get(uri.getPath());
+        Object body;
+        if (collection == null) {
+            // Single element, e.g. /reviews/5
+            String collectionPath = uri.getPath().substring(0, uri.getPath().lastIndexOf('/'));
+            collection = mCollections.get(collectionPath);
+            body = (collection != null) ? find(collection, uri.getLastPathSegment()) : null;
+            if (body == null) {
+                sendStatus(out, "404 Not Found");
+                return;
+            }
+        } else if (idsParam != null) {
+            if (!mSupportIds) {
+                sendStatus(out, "400 Bad Request");
+                return;
+            }
+            Set<String> ids = new HashSet<String>(Arrays.asList(idsParam.split(",")));
+            List<GaspDataObject> elements = new ArrayList<GaspDataObject>();
+            for (GaspDataObject element : collection) {
+                if (ids.contains(String.valueOf(element.getId()))) {
+                    elements.add(element);
+                }
+            }
+            body = elements;
+        } else {
+            List<GaspDataObject> elements = new ArrayList<GaspDataObject>();
+            for (GaspDataObject element : collection) {
+                if (element.getId() > after && elements.size() < limit) {
+                    elements.add(element);
+                }
+            }
+            body = elements;
+        }
+
+        byte[] content = new Gson().toJson(body).getBytes("UTF-8");
+        String etag = "\"" + Integer.toHexString(Arrays.hashCode(content)) + "\"";
+
+        if (etag.equals(ifNoneMatch)) {
+            byte[] headers = ("HTTP/1.1 304 Not Modified\r\n"
+                    + "ETag: " + etag + "\r\n"
+                    + "Connection: close\r\n\r\n").getBytes("UTF-8");
+            out.write(headers);
+            out.flush();
+            mBytesSent.addAndGet(headers.length);
+            mNotModified++;
+            return;
+        }
+
+        boolean gzip = mGzip && acceptGzip;
+        if (gzip) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            GZIPOutputStream gzipOut = new GZIPOutputStream(bytes);
+            gzipOut.write(content);
+            gzipOut.close();
+            content = bytes.toByteArray();
+        }
+
+        byte[] headers = ("HTTP/1.1 200 OK\r\n"
+                + "Content-Type: application/json; charset=UTF-8\r\n"
+                + (gzip ? "Content-Encoding: gzip\r\n" : "")
+                + "ETag: " + etag + "\r\n"
+                + "Content-Length: " + content.length + "\r\n"
+                + "Connection: close\r\n\r\n").getBytes("UTF-8");
+
+        out.write(headers);
+        if (request == mFailRequest) {
+            out.write(content, 0, content.length / 2);
+            out.flush();
+            mBytesSent.addAndGet(headers.length + content.length / 2);
+            return;
+        }
+        out.write(content);
+        out.flush();
+        mBytesSent.addAndGet(headers.length + content.length);
+    }
+
+    private static GaspDataObject find(List<? extends GaspDataObject> collection, String id) {
+        for (GaspDataObject element : collection) {
+            if (String.valueOf(element.getId()).equals(id)) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    private void sendStatus(OutputStream out, String status) throws IOException {
+        byte[] headers = ("HTTP/1.1 " + status + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                .getBytes("UTF-8");
+        out.write(headers);
+        out.flush();
+        mBytesSent.addAndGet(headers.length);
+    }
+}
@@ -0,0 +1,147 @@
+package com.appdynamics.demo.gasp.service;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.support.v4.content.LocalBroadcastManager;
+import android.test.AndroidTestCase;
+
+import com.appdynamics.demo.gasp.R;
+import com.appdynamics.demo.gasp.adapter.GaspTables;
+import com.appdynamics.demo.gasp.adapter.ReviewDataAdapter;
+import com.appdynamics.demo.gasp.model.Restaurant;
+import com.appdynamics.demo.gasp.model.Review;
+import com.appdynamics.demo.gasp.model.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright (c) 2013 Mark Prichard
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Tests SyncCoordinator against a local stand-in server
+ */
+public class SyncCoordinatorTest extends AndroidTestCase {
+
+    private static final int testReviews = 100;
+
+    private StubRestServer server;
+    private String savedServerUri;
+
+    private final List<String> entities = Collections.synchronizedList(new ArrayList<String>());
+    private CountDownLatch signal;
+    private int completed;
+    private boolean success;
+    private int inserted;
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (SyncCoordinator.ACTION_ENTITY_SYNCED.equals(intent.getAction())) {
+                entities.add(intent.getStringExtra(SyncCoordinator.EXTRA_ENTITY));
+            } else {
+                completed++;
+                success = intent.getBooleanExtra(SyncCoordinator.EXTRA_SUCCESS, false);
+                inserted = intent.getIntExtra(SyncCoordinator.EXTRA_INSERTED, -1);
+                signal.countDown();
+            }
+        }
+    };
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        reviewData.open();
+        long lastId;
+        try {
+            lastId = Math.max(reviewData.getSyncState().getLastId(), reviewData.getLastId());
+        } finally {
+            reviewData.close();
+        }
+
+        List<Review> serverReviews = new ArrayList<Review>();
+        for (int i = 1; i <= testReviews; i++) {
+            Review review = new Review();
+            review.setId((int) lastId + i);
+            review.setRestaurant_id(1);
+            review.setUser_id(1);
+            review.setStar(i % 5 + 1);
+            review.setComment("Coordinated review #" + i);
+            serverReviews.add(review);
+        }
+        server = new StubRestServer(serverReviews);
+        server.addCollection(getContext().getString(R.string.gasp_restaurants_location), new ArrayList<Restaurant>());
+        server.addCollection(getContext().getString(R.string.gasp_users_location), new ArrayList<User>());
+
+        PreferenceManager.setDefaultValues(getContext(), R.xml.preferences, false);
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        String key = getContext().getString(R.string.gasp_server_uri_preferences);
+        savedServerUri = preferences.getString(key, "");
+        preferences.edit().putString(key, server.getServerUri()).commit();
+
+        IntentFilter filter = new IntentFilter(SyncCoordinator.ACTION_ENTITY_SYNCED);
+        filter.addAction(SyncCoordinator.ACTION_SYNC_COMPLETED);
+        LocalBroadcastManager.getInstance(getContext()).registerReceiver(receiver, filter);
+    }
+
+    protected void tearDown() throws Exception {
+        LocalBroadcastManager.getInstance(getContext()).unregisterReceiver(receiver);
+        PreferenceManager.getDefaultSharedPreferences(getContext()).edit()
+                .putString(getContext().getString(R.string.gasp_server_uri_preferences), savedServerUri)
+                .commit();
+        server.close();
+        super.tearDown();
+    }
+
+    public void testSyncAll() throws InterruptedException {
+        final SyncCoordinator coordinator = SyncCoordinator.getInstance(getContext());
+        final boolean[] started = new boolean[2];
+        signal = new CountDownLatch(1);
+
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                started[0] = coordinator.start();
+                // Only one sync at a time
+                started[1] = coordinator.start();
+            }
+        });
+
+        assertTrue(signal.await(30, TimeUnit.SECONDS));
+        assertTrue(started[0]);
+        assertFalse(started[1]);
+        assertFalse(coordinator.isRunning());
+
+        // One event per table, then a single completion event
+        assertTrue(success);
+        assertEquals(testReviews, inserted);
+        assertEquals(3, entities.size());
+        assertTrue(entities.contains(GaspTables.RESTAURANTS));
+        assertTrue(entities.contains(GaspTables.REVIEWS));
+        assertTrue(entities.contains(GaspTables.USERS));
+        assertEquals(1, completed);
+    }
+}
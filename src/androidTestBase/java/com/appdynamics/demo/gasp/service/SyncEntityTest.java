@@ -0,0 +1,80 @@
+package com.appdynamics.demo.gasp.service;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import com.appdynamics.demo.gasp.adapter.GaspDataAdapter;
+import com.appdynamics.demo.gasp.adapter.GaspTables;
+import com.appdynamics.demo.gasp.adapter.ReviewDataAdapter;
+import com.appdynamics.demo.gasp.model.Review;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright (c) 2013 Mark Prichard
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Tests SyncEntity descriptors and the row pipeline
+ */
+public class SyncEntityTest extends AndroidTestCase {
+
+    public void testForName() {
+        assertSame(SyncEntity.RESTAURANTS, SyncEntity.forName(GaspTables.RESTAURANTS));
+        assertSame(SyncEntity.REVIEWS, SyncEntity.forName(GaspTables.REVIEWS));
+        assertSame(SyncEntity.USERS, SyncEntity.forName(GaspTables.USERS));
+        assertNull(SyncEntity.forName("unknown"));
+        assertEquals(3, SyncEntity.getAll().size());
+    }
+
+    public void testDescriptor() {
+        assertEquals(Review.class, SyncEntity.REVIEWS.getType());
+        assertTrue(SyncEntity.REVIEWS.newDataAdapter(getContext()) instanceof ReviewDataAdapter);
+
+        String uri = SyncEngine.getInstance(getContext()).getUri(SyncEntity.REVIEWS).toString();
+        assertTrue(uri.endsWith(getContext().getString(SyncEntity.REVIEWS.getLocationResId())));
+    }
+
+    public void testPipeline() {
+        final List<String> stages = new ArrayList<String>();
+        SyncEntity<Review> entity = new SyncEntity<Review>("test", SyncEntity.REVIEWS.getLocationResId(), Review.class,
+                SyncEntity.REVIEWS.getTtlMillis()) {
+            @Override
+            public GaspDataAdapter<Review> newDataAdapter(Context context) {
+                return new ReviewDataAdapter(context);
+            }
+        };
+        entity.addRowProcessor(new SyncEntity.RowProcessor<Review>() {
+            @Override
+            public void process(Review review) {
+                stages.add("first " + review.getId());
+            }
+        }).addRowProcessor(new SyncEntity.RowProcessor<Object>() {
+            @Override
+            public void process(Object row) {
+                stages.add("second");
+            }
+        });
+
+        Review review = new Review();
+        review.setId(7);
+        entity.processRow(review);
+
+        assertEquals(2, stages.size());
+        assertEquals("first 7", stages.get(0));
+        assertEquals("second", stages.get(1));
+    }
+}
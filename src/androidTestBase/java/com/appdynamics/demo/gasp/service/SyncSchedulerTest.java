@@ -0,0 +1,194 @@
+package com.appdynamics.demo.gasp.service;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.support.v4.content.LocalBroadcastManager;
+import android.test.AndroidTestCase;
+
+import com.appdynamics.demo.gasp.R;
+import com.appdynamics.demo.gasp.adapter.GaspDataAdapter;
+import com.appdynamics.demo.gasp.model.Restaurant;
+import com.appdynamics.demo.gasp.model.Review;
+import com.appdynamics.demo.gasp.model.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright (c) 2013 Mark Prichard
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Tests SyncScheduler freshness, interval and coalescing rules
+ */
+public class SyncSchedulerTest extends AndroidTestCase {
+
+    private StubRestServer server;
+    private String savedServerUri;
+    private SharedPreferences schedule;
+
+    private final List<String> synced = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> skipped = Collections.synchronizedList(new ArrayList<String>());
+    private CountDownLatch signal;
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String entity = intent.getStringExtra(SyncCoordinator.EXTRA_ENTITY);
+            if (intent.getBooleanExtra(SyncCoordinator.EXTRA_SKIPPED, false)) {
+                skipped.add(entity);
+            } else {
+                synced.add(entity);
+            }
+            signal.countDown();
+        }
+    };
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        server = new StubRestServer(new ArrayList<Review>());
+        server.addCollection(getContext().getString(R.string.gasp_restaurants_location), new ArrayList<Restaurant>());
+        server.addCollection(getContext().getString(R.string.gasp_users_location), new ArrayList<User>());
+
+        PreferenceManager.setDefaultValues(getContext(), R.xml.preferences, false);
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        String key = getContext().getString(R.string.gasp_server_uri_preferences);
+        savedServerUri = preferences.getString(key, "");
+        preferences.edit().putString(key, server.getServerUri()).commit();
+
+        // Every table synced just now, and no recent run
+        for (SyncEntity<?> entity : SyncEntity.getAll()) {
+            setLastSyncTime(entity, System.currentTimeMillis());
+        }
+        schedule = getContext().getSharedPreferences(SyncScheduler.PREFERENCES, Context.MODE_PRIVATE);
+        schedule.edit().clear().commit();
+
+        LocalBroadcastManager.getInstance(getContext())
+                .registerReceiver(receiver, new IntentFilter(SyncCoordinator.ACTION_ENTITY_SYNCED));
+    }
+
+    protected void tearDown() throws Exception {
+        LocalBroadcastManager.getInstance(getContext()).unregisterReceiver(receiver);
+        PreferenceManager.getDefaultSharedPreferences(getContext()).edit()
+                .putString(getContext().getString(R.string.gasp_server_uri_preferences), savedServerUri)
+                .commit();
+        schedule.edit().clear().commit();
+        server.close();
+        super.tearDown();
+    }
+
+    private void setLastSyncTime(SyncEntity<?> entity, long lastSyncTime) {
+        GaspDataAdapter<?> dataAdapter = entity.newDataAdapter(getContext());
+        dataAdapter.open();
+        try {
+            dataAdapter.saveSyncState(dataAdapter.getSyncState(), lastSyncTime);
+        } finally {
+            dataAdapter.close();
+        }
+    }
+
+    private long getLastSyncTime(SyncEntity<?> entity) {
+        GaspDataAdapter<?> dataAdapter = entity.newDataAdapter(getContext());
+        dataAdapter.open();
+        try {
+            return dataAdapter.getSyncState().getLastSyncTime();
+        } finally {
+            dataAdapter.close();
+        }
+    }
+
+    public void testFreshTablesSkipped() throws InterruptedException {
+        signal = new CountDownLatch(SyncEntity.getAll().size());
+        SyncScheduler.getInstance(getContext()).requestSync(SyncScheduler.TRIGGER_STARTUP);
+
+        assertTrue(signal.await(10, TimeUnit.SECONDS));
+        assertEquals(SyncEntity.getAll().size(), skipped.size());
+        assertEquals(0, synced.size());
+        assertEquals(0, server.getRequests());
+    }
+
+    public void testTriggersCoalesced() throws InterruptedException {
+        setLastSyncTime(SyncEntity.REVIEWS, 0);
+
+        // Stale reviews requested twice, plus a manual refresh of users: one run syncs both
+        signal = new CountDownLatch(SyncEntity.getAll().size());
+        SyncScheduler scheduler = SyncScheduler.getInstance(getContext());
+        scheduler.requestSync(SyncScheduler.TRIGGER_STARTUP);
+        scheduler.requestSync(SyncScheduler.TRIGGER_STARTUP, Collections.singletonList(SyncEntity.REVIEWS));
+        scheduler.requestSync(SyncScheduler.TRIGGER_MANUAL, Collections.singletonList(SyncEntity.USERS));
+
+        assertTrue(signal.await(30, TimeUnit.SECONDS));
+        assertEquals(2, synced.size());
+        assertTrue(synced.contains(SyncEntity.REVIEWS.getName()));
+        assertTrue(synced.contains(SyncEntity.USERS.getName()));
+        assertEquals(Collections.singletonList(SyncEntity.RESTAURANTS.getName()), skipped);
+        assertEquals(2, server.getRequests());
+
+        // The sync time is stored with the sync state
+        assertTrue(getLastSyncTime(SyncEntity.REVIEWS) > 0);
+        assertTrue(schedule.getLong(SyncScheduler.LAST_RUN_KEY, 0) > 0);
+    }
+
+    public void testDeferredTablesReported() throws InterruptedException {
+        setLastSyncTime(SyncEntity.REVIEWS, 0);
+        schedule.edit().putLong(SyncScheduler.LAST_RUN_KEY, System.currentTimeMillis()).commit();
+
+        // A run started just now: the stale table is reported at once, so screens show local data
+        signal = new CountDownLatch(SyncEntity.getAll().size());
+        SyncScheduler scheduler = SyncScheduler.getInstance(getContext());
+        scheduler.requestSync(SyncScheduler.TRIGGER_STARTUP);
+
+        assertTrue(signal.await(10, TimeUnit.SECONDS));
+        assertEquals(SyncEntity.getAll().size(), skipped.size());
+        assertEquals(0, synced.size());
+        assertEquals(0, server.getRequests());
+
+        // A manual refresh does not wait for the deferred run
+        signal = new CountDownLatch(1);
+        scheduler.requestSync(SyncScheduler.TRIGGER_MANUAL, Collections.singletonList(SyncEntity.REVIEWS));
+
+        assertTrue(signal.await(30, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(SyncEntity.REVIEWS.getName()), synced);
+    }
+
+    public void testIsStale() {
+        long ttl = SyncEntity.REVIEWS.getTtlMillis();
+        long now = System.currentTimeMillis();
+
+        assertTrue(SyncScheduler.isStale(0, ttl, now));
+        assertTrue(SyncScheduler.isStale(now - ttl, ttl, now));
+        assertFalse(SyncScheduler.isStale(now - ttl + 1, ttl, now));
+
+        // Clock moved backwards
+        assertTrue(SyncScheduler.isStale(now + 1000, ttl, now));
+    }
+
+    public void testGetWaitMillis() {
+        long now = System.currentTimeMillis();
+
+        assertEquals(0, SyncScheduler.getWaitMillis(0, now));
+        assertEquals(0, SyncScheduler.getWaitMillis(now - SyncScheduler.MIN_INTERVAL_MILLIS, now));
+        assertEquals(1000, SyncScheduler.getWaitMillis(now - SyncScheduler.MIN_INTERVAL_MILLIS + 1000, now));
+        assertEquals(0, SyncScheduler.getWaitMillis(now + 1000, now));
+    }
+}
@@ -0,0 +1,168 @@
+package com.appdynamics.demo.gasp.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.appdynamics.demo.gasp.R;
+import com.appdynamics.demo.gasp.adapter.IdIndex;
+import com.appdynamics.demo.gasp.adapter.ReviewDataAdapter;
+import com.appdynamics.demo.gasp.model.Review;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright (c) 2013 Mark Prichard
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Tests batched GCM updates (SyncEngine.update() and UpdateBatcher) against a local stand-in server
+ */
+public class UpdateBatcherTest extends AndroidTestCase {
+
+    private static final int testReviews = 150;
+
+    private StubRestServer server;
+    private String savedServerUri;
+    private List<Integer> ids;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        long lastId = getLastId();
+        List<Review> serverReviews = new ArrayList<Review>();
+        ids = new ArrayList<Integer>();
+        for (int i = 1; i <= testReviews; i++) {
+            Review review = new Review();
+            review.setId((int) lastId + i);
+            review.setRestaurant_id(1);
+            review.setUser_id(1);
+            review.setStar(i % 5 + 1);
+            review.setComment("Pushed review #" + i);
+            serverReviews.add(review);
+            ids.add(review.getId());
+        }
+        server = new StubRestServer(serverReviews);
+
+        PreferenceManager.setDefaultValues(getContext(), R.xml.preferences, false);
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        String key = getContext().getString(R.string.gasp_server_uri_preferences);
+        savedServerUri = preferences.getString(key, "");
+        SyncEngine.getInstance(getContext());
+        preferences.edit().putString(key, server.getServerUri()).commit();
+
+        // SyncEngine hears about the new server URI on the UI thread
+        waitForMainThread();
+    }
+
+    protected void tearDown() throws Exception {
+        getContext().getSharedPreferences(SyncEngine.PREFERENCES, Context.MODE_PRIVATE).edit().clear().commit();
+        PreferenceManager.getDefaultSharedPreferences(getContext()).edit()
+                .putString(getContext().getString(R.string.gasp_server_uri_preferences), savedServerUri)
+                .commit();
+        server.close();
+        super.tearDown();
+    }
+
+    private void waitForMainThread() throws InterruptedException {
+        final CountDownLatch signal = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                signal.countDown();
+            }
+        });
+        assertTrue(signal.await(5, TimeUnit.SECONDS));
+    }
+
+    private long getLastId() {
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(getContext());
+        reviewData.open();
+        try {
+            return Math.max(reviewData.getSyncState().getLastId(), reviewData.getLastId());
+        } finally {
+            reviewData.close();
+        }
+    }
+
+    public void testBatchedUpdate() {
+        int inserted = SyncEngine.getInstance(getContext()).update(SyncEntity.REVIEWS, ids);
+        assertEquals(testReviews, inserted);
+
+        // One request per MAX_BATCH_IDS ids
+        assertEquals((testReviews + SyncEngine.MAX_BATCH_IDS - 1) / SyncEngine.MAX_BATCH_IDS, server.getRequests());
+        assertEquals((long) ids.get(ids.size() - 1), getLastId());
+
+        // Rows that are already stored are found locally, without a request
+        int requests = server.getRequests();
+        int hits = IdIndex.forTable(SyncEntity.REVIEWS.getName()).getHits();
+        assertEquals(0, SyncEngine.getInstance(getContext()).update(SyncEntity.REVIEWS, ids.subList(0, 10)));
+        assertEquals(requests, server.getRequests());
+        assertEquals(hits + 10, IdIndex.forTable(SyncEntity.REVIEWS.getName()).getHits());
+    }
+
+    public void testSingleRequestFallback() {
+        server.setSupportIds(false);
+
+        List<Integer> someIds = ids.subList(0, 10);
+        int inserted = SyncEngine.getInstance(getContext()).update(SyncEntity.REVIEWS, someIds);
+        assertEquals(someIds.size(), inserted);
+
+        // The rejected batch, then one request per id
+        assertEquals(1 + someIds.size(), server.getRequests());
+        assertEquals((long) someIds.get(someIds.size() - 1), getLastId());
+    }
+
+    public void testIgnoredIdsFallback() {
+        server.setIgnoreIds(true);
+
+        // The first row of the whole collection was not requested: the response is dropped there
+        List<Integer> someIds = ids.subList(testReviews - 10, testReviews);
+        int inserted = SyncEngine.getInstance(getContext()).update(SyncEntity.REVIEWS, someIds);
+        assertEquals(someIds.size(), inserted);
+        assertEquals(1 + someIds.size(), server.getRequests());
+
+        // Remembered: no more batched requests to this server
+        someIds = ids.subList(0, 10);
+        inserted = SyncEngine.getInstance(getContext()).update(SyncEntity.REVIEWS, someIds);
+        assertEquals(someIds.size(), inserted);
+        assertEquals(1 + 2 * someIds.size(), server.getRequests());
+    }
+
+    public void testBurstCoalesced() {
+        UpdateBatcher batcher = UpdateBatcher.getInstance(getContext());
+        List<Integer> someIds = ids.subList(0, 50);
+        for (Integer id : someIds) {
+            batcher.add(SyncEntity.REVIEWS, id);
+        }
+
+        // Waits for the batch window, then stores every buffered id with one request
+        long start = System.currentTimeMillis();
+        batcher.flush();
+        assertTrue(System.currentTimeMillis() - start >= UpdateBatcher.BATCH_WINDOW_MILLIS - 100);
+        assertEquals((long) someIds.get(someIds.size() - 1), getLastId());
+        assertEquals(1, server.getRequests());
+
+        // Nothing left for the flushes of the other Intents in the burst
+        batcher.flush();
+        assertEquals(1, server.getRequests());
+    }
+}
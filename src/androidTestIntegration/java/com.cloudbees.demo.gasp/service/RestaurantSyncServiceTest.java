@@ -1,8 +1,8 @@
 package com.appdynamics.demo.gasp.service;
 
-import android.content.Intent;
 import android.test.ServiceTestCase;
 
+import com.appdynamics.demo.gasp.adapter.GaspTables;
 import com.appdynamics.demo.gasp.adapter.RestaurantDataAdapter;
 import com.appdynamics.demo.gasp.model.Restaurant;
 
@@ -26,14 +26,14 @@ import java.util.concurrent.TimeUnit;
  * limitations under the License.
  */
 
-public class RestaurantSyncServiceTest extends ServiceTestCase<RestaurantSyncService> {
+public class RestaurantSyncServiceTest extends ServiceTestCase<SyncService> {
     private static final String TAG = RestaurantSyncServiceTest.class.getName();
 
     private RestaurantDataAdapter restaurantAdapter;
     private CountDownLatch signal;
 
     public RestaurantSyncServiceTest() {
-        super(RestaurantSyncService.class);
+        super(SyncService.class);
     }
 
     private void cleanDatabase() {
@@ -56,7 +56,7 @@ public class RestaurantSyncServiceTest extends ServiceTestCase<RestaurantSyncSer
     }
 
     public void testRestaurantSyncIntent() throws InterruptedException {
-        startService(new Intent(getContext(), RestaurantSyncService.class));
+        startService(SyncService.newSyncIntent(getContext(), GaspTables.RESTAURANTS));
 
         // Allow 20 secs for the async REST call to complete
         signal.await(20, TimeUnit.SECONDS);
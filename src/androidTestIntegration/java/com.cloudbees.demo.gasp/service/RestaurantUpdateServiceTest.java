@@ -1,10 +1,9 @@
 package com.appdynamics.demo.gasp.service;
 
-import android.content.Intent;
 import android.test.ServiceTestCase;
 
+import com.appdynamics.demo.gasp.adapter.GaspTables;
 import com.appdynamics.demo.gasp.adapter.RestaurantDataAdapter;
-import com.appdynamics.demo.gasp.gcm.GCMIntentService;
 import com.appdynamics.demo.gasp.model.Restaurant;
 
 import java.util.List;
@@ -27,14 +26,14 @@ import java.util.concurrent.TimeUnit;
  * limitations under the License.
  */
 
-public class RestaurantUpdateServiceTest extends ServiceTestCase<RestaurantUpdateService> {
+public class RestaurantUpdateServiceTest extends ServiceTestCase<SyncService> {
     private static final String TAG = RestaurantUpdateServiceTest.class.getName();
 
     private RestaurantDataAdapter restaurantAdapter;
     private final CountDownLatch signal;
 
     public RestaurantUpdateServiceTest() {
-        super(RestaurantUpdateService.class);
+        super(SyncService.class);
         signal = new CountDownLatch(1);
     }
 
@@ -57,8 +56,7 @@ public class RestaurantUpdateServiceTest extends ServiceTestCase<RestaurantUpdat
     }
 
     public void testRestaurantUpdateIntent() throws InterruptedException {
-        startService(new Intent(getContext(), RestaurantUpdateService.class)
-                .putExtra(GCMIntentService.PARAM_ID, 1));
+        startService(SyncService.newUpdateIntent(getContext(), GaspTables.RESTAURANTS, 1));
 
         // Allow 20 secs for the async REST call to complete
         signal.await(20, TimeUnit.SECONDS);
@@ -1,8 +1,8 @@
 package com.appdynamics.demo.gasp.service;
 
-import android.content.Intent;
 import android.test.ServiceTestCase;
 
+import com.appdynamics.demo.gasp.adapter.GaspTables;
 import com.appdynamics.demo.gasp.adapter.ReviewDataAdapter;
 import com.appdynamics.demo.gasp.model.Review;
 
@@ -26,14 +26,14 @@ import java.util.concurrent.TimeUnit;
  * limitations under the License.
  */
 
-public class ReviewSyncServiceTest extends ServiceTestCase<ReviewSyncService> {
+public class ReviewSyncServiceTest extends ServiceTestCase<SyncService> {
     private static final String TAG = ReviewSyncServiceTest.class.getName();
 
     private ReviewDataAdapter reviewAdapter;
     private CountDownLatch signal;
 
     public ReviewSyncServiceTest() {
-        super(ReviewSyncService.class);
+        super(SyncService.class);
     }
 
     private void cleanDatabase() {
@@ -56,7 +56,7 @@ public class ReviewSyncServiceTest extends ServiceTestCase<ReviewSyncService> {
     }
 
     public void testReviewSyncIntent() throws InterruptedException {
-        startService(new Intent(getContext(), ReviewSyncService.class));
+        startService(SyncService.newSyncIntent(getContext(), GaspTables.REVIEWS));
 
         // Allow 20 secs for the async REST call to complete
         signal.await(20, TimeUnit.SECONDS);
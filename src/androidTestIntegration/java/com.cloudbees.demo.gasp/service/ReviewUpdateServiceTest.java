@@ -1,10 +1,9 @@
 package com.appdynamics.demo.gasp.service;
 
-import android.content.Intent;
 import android.test.ServiceTestCase;
 
+import com.appdynamics.demo.gasp.adapter.GaspTables;
 import com.appdynamics.demo.gasp.adapter.ReviewDataAdapter;
-import com.appdynamics.demo.gasp.gcm.GCMIntentService;
 import com.appdynamics.demo.gasp.model.Review;
 
 import java.util.List;
@@ -27,14 +26,14 @@ import java.util.concurrent.TimeUnit;
  * limitations under the License.
  */
 
-public class ReviewUpdateServiceTest extends ServiceTestCase<ReviewUpdateService> {
+public class ReviewUpdateServiceTest extends ServiceTestCase<SyncService> {
     private static final String TAG = ReviewUpdateServiceTest.class.getName();
 
     private ReviewDataAdapter reviewAdapter;
     private CountDownLatch signal;
 
     public ReviewUpdateServiceTest() {
-        super(ReviewUpdateService.class);
+        super(SyncService.class);
     }
 
     private void cleanDatabase() {
@@ -57,8 +56,7 @@ public class ReviewUpdateServiceTest extends ServiceTestCase<ReviewUpdateService
     }
 
     public void testReviewUpdateIntent() throws InterruptedException {
-        startService(new Intent(getContext(), ReviewUpdateService.class)
-                .putExtra(GCMIntentService.PARAM_ID, 1));
+        startService(SyncService.newUpdateIntent(getContext(), GaspTables.REVIEWS, 1));
 
         // Allow 20 secs for the async REST call to complete
         signal.await(20, TimeUnit.SECONDS);
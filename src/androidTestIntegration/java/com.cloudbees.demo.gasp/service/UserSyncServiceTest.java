@@ -1,8 +1,8 @@
 package com.appdynamics.demo.gasp.service;
 
-import android.content.Intent;
 import android.test.ServiceTestCase;
 
+import com.appdynamics.demo.gasp.adapter.GaspTables;
 import com.appdynamics.demo.gasp.adapter.UserDataAdapter;
 import com.appdynamics.demo.gasp.model.User;
 
@@ -26,14 +26,14 @@ import java.util.concurrent.TimeUnit;
  * limitations under the License.
  */
 
-public class UserSyncServiceTest extends ServiceTestCase<UserSyncService> {
+public class UserSyncServiceTest extends ServiceTestCase<SyncService> {
     private static final String TAG = UserSyncServiceTest.class.getName();
 
     private UserDataAdapter userAdapter;
     private CountDownLatch signal;
 
     public UserSyncServiceTest() {
-        super(UserSyncService.class);
+        super(SyncService.class);
     }
 
     private void cleanDatabase() {
@@ -56,7 +56,7 @@ public class UserSyncServiceTest extends ServiceTestCase<UserSyncService> {
     }
 
     public void testUserSyncIntent() throws InterruptedException {
-        startService(new Intent(getContext(), UserSyncService.class));
+        startService(SyncService.newSyncIntent(getContext(), GaspTables.USERS));
 
         // Allow 20 secs for the async REST call to complete
         signal.await(20, TimeUnit.SECONDS);
@@ -1,10 +1,9 @@
 package com.appdynamics.demo.gasp.service;
 
-import android.content.Intent;
 import android.test.ServiceTestCase;
 
+import com.appdynamics.demo.gasp.adapter.GaspTables;
 import com.appdynamics.demo.gasp.adapter.UserDataAdapter;
-import com.appdynamics.demo.gasp.gcm.GCMIntentService;
 import com.appdynamics.demo.gasp.model.User;
 
 import java.util.List;
@@ -27,14 +26,14 @@ import java.util.concurrent.TimeUnit;
  * limitations under the License.
  */
 
-public class UserUpdateServiceTest extends ServiceTestCase<UserUpdateService> {
+public class UserUpdateServiceTest extends ServiceTestCase<SyncService> {
     private static final String TAG = UserUpdateServiceTest.class.getName();
 
     private UserDataAdapter userAdapter;
     private CountDownLatch signal;
 
     public UserUpdateServiceTest() {
-        super(UserUpdateService.class);
+        super(SyncService.class);
         signal = new CountDownLatch(1);
     }
 
@@ -58,8 +57,7 @@ public class UserUpdateServiceTest extends ServiceTestCase<UserUpdateService> {
     }
 
     public void testUserUpdateIntent() throws InterruptedException {
-        startService(new Intent(getContext(), UserUpdateService.class)
-                .putExtra(GCMIntentService.PARAM_ID, 1));
+        startService(SyncService.newUpdateIntent(getContext(), GaspTables.USERS, 1));
 
         // Allow 20 secs for the async REST call to complete
         signal.await(20, TimeUnit.SECONDS);
@@ -16,8 +16,9 @@ import android.view.View;
 import android.widget.Button;
 
 import com.appdynamics.demo.gasp.R;
-import com.appdynamics.demo.gasp.adapter.GaspDatabase;
-import com.appdynamics.demo.gasp.gcm.GCMIntentService;
+import com.appdynamics.demo.gasp.adapter.AsyncGaspDatabase;
+import com.appdynamics.demo.gasp.adapter.GaspTables;
+import com.appdynamics.demo.gasp.adapter.RestaurantCache;
 import com.appdynamics.demo.gasp.gcm.GaspRegistrationClient;
 import com.appdynamics.demo.gasp.location.GaspPlaces;
 import com.appdynamics.demo.gasp.location.GaspSearch;
@@ -26,10 +27,11 @@ import com.appdynamics.demo.gasp.model.PlaceDetails;
 import com.appdynamics.demo.gasp.model.Places;
 import com.appdynamics.demo.gasp.model.Query;
 import com.appdynamics.demo.gasp.model.Restaurant;
+import com.appdynamics.demo.gasp.model.RestaurantRating;
 import com.appdynamics.demo.gasp.model.SearchResult;
-import com.appdynamics.demo.gasp.service.RestaurantSyncService;
-import com.appdynamics.demo.gasp.service.ReviewSyncService;
-import com.appdynamics.demo.gasp.service.UserSyncService;
+import com.appdynamics.demo.gasp.service.DatabaseMaintenanceService;
+import com.appdynamics.demo.gasp.service.SyncCoordinator;
+import com.appdynamics.demo.gasp.service.SyncScheduler;
 import com.appdynamics.demo.gasp.twitter.TwitterAuthentication;
 import com.appdynamics.demo.gasp.utils.LocationServices;
 import com.appdynamics.demo.gasp.utils.Network;
@@ -45,7 +47,13 @@ import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.appdynamics.eumagent.runtime.Instrumentation;
 
@@ -109,16 +117,20 @@ public class LocationsActivity extends FragmentActivity {
             Log.e(TAG, "Google Places API search failed: status = " + status);
         }
     };
-    private final GaspDatabase mGaspDatabase = new GaspDatabase(this);
+    private AsyncGaspDatabase mAsyncDatabase;
 
     // Map GoogleMap Markers to Place Ids
     private final HashMap<String, String> mPlacesMap = new HashMap<String, String>();
     // Map Place Ids to Reference strings
     private final HashMap<String, String> mReferencesMap = new HashMap<String, String>();
+    // Markers drawn from local Gasp data, keyed by Place Id: replaced when the Places API search returns
+    private final HashMap<String, Marker> mLocalMarkers = new HashMap<String, Marker>();
 
     // On initial load, we need to wait for Gasp data sync before drawing location markers
     private static boolean waitForSync = true;
-    public static final String SYNC_COMPLETED = "gasp-sync";
+    // Tables the markers are drawn from (restaurants, and reviews for ratings): search and draw once both have synced
+    private final Set<String> mMapSyncPending = new HashSet<String>(
+            Arrays.asList(GaspTables.RESTAURANTS, GaspTables.REVIEWS));
 
     // Proxy to handle Gasp GCM registration services
     private final GaspRegistrationClient mGaspRegistrationClient = new GaspRegistrationClient();
@@ -129,17 +141,11 @@ public class LocationsActivity extends FragmentActivity {
      * Handle initial REST sync and GCM updates
      */
     private void startDataSyncServices() {
-        Intent reviewsIntent = new Intent(this, ReviewSyncService.class);
-        reviewsIntent.putExtra(GCMIntentService.PARAM_IN_MSG, "reviews");
-        startService(reviewsIntent);
+        // Restaurants, reviews and users whose last sync is out of date, in parallel
+        SyncScheduler.getInstance(this).requestSync(SyncScheduler.TRIGGER_STARTUP);
 
-        Intent restaurantsIntent = new Intent(this, RestaurantSyncService.class);
-        restaurantsIntent.putExtra(GCMIntentService.PARAM_IN_MSG, "restaurants");
-        startService(restaurantsIntent);
-
-        Intent usersIntent = new Intent(this, UserSyncService.class);
-        usersIntent.putExtra(GCMIntentService.PARAM_IN_MSG, "users");
-        startService(usersIntent);
+        // Review retention and vacuum: the service runs at most once a day
+        startService(new Intent(this, DatabaseMaintenanceService.class));
     }
 
     /**
@@ -162,6 +168,10 @@ public class LocationsActivity extends FragmentActivity {
         mMap.setOnMarkerClickListener(new GoogleMap.OnMarkerClickListener() {
             @Override
             public boolean onMarkerClick(Marker marker) {
+                // Markers drawn from local data have no Places reference until the search returns
+                if (!mPlacesMap.containsKey(marker.getId()))
+                    return false;
+
                 Log.d(TAG, "Place Id: " + mPlacesMap.get(marker.getId()));
                 Log.d(TAG, "Reference: " + mReferencesMap.get(mPlacesMap.get(marker.getId())));
                 mGaspPlaces.placeDetails(new Query(mReferencesMap.get(mPlacesMap.get(marker.getId()))));
@@ -204,30 +214,108 @@ public class LocationsActivity extends FragmentActivity {
         }
     }
 
+    /**
+     * Draw known Gasp restaurants near the current location straight from the local database,
+     * while the Google Places API search is still in flight
+     */
+    private void showKnownRestaurants() {
+        if (mLocation == null)
+            return;
+
+        Preferences preferences = new Preferences(this);
+        mAsyncDatabase.findRestaurantsWithin(mLocation.getLatitude(), mLocation.getLongitude(),
+                Preferences.getGaspSearchRadius(),
+                new AsyncGaspDatabase.Callback<List<Restaurant>>() {
+                    @Override
+                    public void onResult(List<Restaurant> restaurants) {
+                        for (Restaurant restaurant : restaurants) {
+                            // Skip places already drawn from a Places API search result
+                            if (mReferencesMap.containsKey(restaurant.getPlacesId()))
+                                continue;
+
+                            Marker marker = mMap.addMarker(
+                                    new MarkerOptions()
+                                            .position(new LatLng(restaurant.getLat(), restaurant.getLng()))
+                                            .title(restaurant.getName())
+                                            .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_GREEN)));
+                            mLocalMarkers.put(restaurant.getPlacesId(), marker);
+                        }
+                    }
+                });
+    }
+
     /**
      * Display location via Google Maps API
+     * Gasp restaurants for the places are looked up in the background before the markers are drawn
+     * @param searchResult Gasp! Locations to display
+     */
+    private void showLocations(final SearchResult searchResult) {
+        // Look up all Gasp restaurants for this set of places in one batch
+        List<String> placesIds = new ArrayList<String>();
+        for (Place place : searchResult.getPlaces()) {
+            placesIds.add(place.getId());
+        }
+        mAsyncDatabase.getRestaurantsByPlacesIds(placesIds,
+                new AsyncGaspDatabase.Callback<Map<String, Restaurant>>() {
+                    @Override
+                    public void onResult(final Map<String, Restaurant> restaurants) {
+                        showRatings(searchResult, restaurants);
+                    }
+                });
+    }
+
+    /**
+     * Look up review ratings for the Gasp restaurants in the background, then add the markers
      * @param searchResult Gasp! Locations to display
+     * @param restaurants Gasp restaurants, keyed by Google Places id
      */
-    private void showLocations(SearchResult searchResult) {
-        Restaurant restaurant;
+    private void showRatings(final SearchResult searchResult, final Map<String, Restaurant> restaurants) {
+        List<Integer> restaurantIds = new ArrayList<Integer>();
+        for (Restaurant restaurant : restaurants.values()) {
+            restaurantIds.add(restaurant.getId());
+        }
+        mAsyncDatabase.getRatingsByRestaurants(restaurantIds,
+                new AsyncGaspDatabase.Callback<Map<Integer, RestaurantRating>>() {
+                    @Override
+                    public void onResult(Map<Integer, RestaurantRating> ratings) {
+                        addMarkers(searchResult, restaurants, ratings);
+                    }
+                });
+    }
+
+    /**
+     * Add Google Maps markers: green for Gasp restaurants, red for other places
+     * @param searchResult Gasp! Locations to display
+     * @param restaurants Gasp restaurants, keyed by Google Places id
+     * @param ratings Review ratings, keyed by Gasp restaurant id
+     */
+    private void addMarkers(SearchResult searchResult, Map<String, Restaurant> restaurants,
+                            Map<Integer, RestaurantRating> ratings) {
         float markerColour;
         try {
             for (Place place : searchResult.getPlaces()) {
+                Marker localMarker = mLocalMarkers.remove(place.getId());
+                if (localMarker != null)
+                    localMarker.remove();
+
                 LatLng pos = new LatLng(place.getGeometry().getLocation().getLat().doubleValue(),
                         place.getGeometry().getLocation().getLng().doubleValue());
 
-                restaurant = mGaspDatabase.getRestaurantByPlacesId(place.getId());
+                Restaurant restaurant = restaurants.get(place.getId());
                 if (restaurant != null)
                     markerColour = BitmapDescriptorFactory.HUE_GREEN;
                 else
                     markerColour = BitmapDescriptorFactory.HUE_RED;
 
-                Marker marker =
-                        mMap.addMarker(
-                            new MarkerOptions()
-                                    .position(pos)
-                                    .title(place.getName())
-                                    .icon(BitmapDescriptorFactory.defaultMarker(markerColour)));
+                MarkerOptions options = new MarkerOptions()
+                        .position(pos)
+                        .title(place.getName())
+                        .icon(BitmapDescriptorFactory.defaultMarker(markerColour));
+                RestaurantRating rating = (restaurant != null) ? ratings.get(restaurant.getId()) : null;
+                if (rating != null)
+                    options.snippet(rating.toString());
+
+                Marker marker = mMap.addMarker(options);
                 Log.d(TAG, place.getName() + " " + pos.toString());
                 mPlacesMap.put(marker.getId(), place.getId());
                 mReferencesMap.put(place.getId(), place.getReference());
@@ -294,8 +382,11 @@ public class LocationsActivity extends FragmentActivity {
     private final BroadcastReceiver mMessageReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-            Log.d(TAG, "Restaurant sync completed");
-            getLocations();
+            String entity = intent.getStringExtra(SyncCoordinator.EXTRA_ENTITY);
+            if (mMapSyncPending.remove(entity) && mMapSyncPending.isEmpty()) {
+                Log.d(TAG, "Restaurant and review sync completed");
+                getLocations();
+            }
         }
     };
 
@@ -314,6 +405,7 @@ public class LocationsActivity extends FragmentActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mAsyncDatabase = new AsyncGaspDatabase(this);
 
         Instrumentation.start("EUM-AAB-AUB",
                               getApplicationContext(),
@@ -329,13 +421,15 @@ public class LocationsActivity extends FragmentActivity {
         if (savedInstanceState == null) {
             // We need Play Services and Network connectivity
             if (PlayServices.checkPlayServices(this) && Network.checkNetworking(this)) {
-                // Register listener for notification that restaurant data has been synced
+                // Register listener for notification that restaurant and review data has been synced
                 LocalBroadcastManager.getInstance(this)
-                        .registerReceiver(mMessageReceiver, new IntentFilter(SYNC_COMPLETED));
+                        .registerReceiver(mMessageReceiver, new IntentFilter(SyncCoordinator.ACTION_ENTITY_SYNCED));
 
-                // Start data sync services and draw map
+                // Warm restaurant cache, start data sync services and draw map
+                RestaurantCache.getInstance().warm(this);
                 startDataSyncServices();
                 prepareMapView();
+                showKnownRestaurants();
             }
             else {
                 Log.e(TAG, "Cannot launch LocationsActivity");
@@ -402,6 +496,10 @@ public class LocationsActivity extends FragmentActivity {
                 intent.setClass(LocationsActivity.this, GaspDataActivity.class);
                 startActivityForResult(intent, 0);
                 return true;
+
+            case R.id.gasp_sync:
+                SyncScheduler.getInstance(this).requestSync(SyncScheduler.TRIGGER_MANUAL);
+                return true;
             /*
             case R.id.gasp_reviews_data:
                 intent = new Intent();
@@ -440,6 +538,7 @@ public class LocationsActivity extends FragmentActivity {
 
     @Override
     protected void onDestroy() {
+        mAsyncDatabase.cancelAll();
         mGaspRegistrationClient.doUnregisterGasp(this);
         LocalBroadcastManager.getInstance(this).unregisterReceiver(mMessageReceiver);
         super.onDestroy();
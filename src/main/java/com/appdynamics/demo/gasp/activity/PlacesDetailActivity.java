@@ -14,13 +14,15 @@ import android.view.View;
 import android.widget.Button;
 
 import com.appdynamics.demo.gasp.R;
-import com.appdynamics.demo.gasp.adapter.GaspDatabase;
+import com.appdynamics.demo.gasp.adapter.AsyncGaspDatabase;
 import com.appdynamics.demo.gasp.fragment.EventDetailsFragment;
 import com.appdynamics.demo.gasp.fragment.LocationDetailsFragment;
 import com.appdynamics.demo.gasp.fragment.ReviewDetailsFragment;
 import com.appdynamics.demo.gasp.model.PlaceDetail;
 import com.appdynamics.demo.gasp.model.Restaurant;
+import com.appdynamics.demo.gasp.model.RestaurantRating;
 import com.appdynamics.demo.gasp.model.Review;
+import com.appdynamics.demo.gasp.model.ReviewDetail;
 import com.appdynamics.demo.gasp.server.GaspRestaurants;
 
 import java.net.URL;
@@ -55,13 +57,13 @@ public class PlacesDetailActivity extends FragmentActivity {
     private PlaceDetail mPlaceDetail;   // Google Places API details
 
     // Gasp proxy objects
-    private final GaspDatabase mGaspDatabase = new GaspDatabase(this);
+    private final AsyncGaspDatabase mAsyncDatabase = new AsyncGaspDatabase(this);
     private final GaspRestaurants mGaspRestaurants = new GaspRestaurants() {
         @Override
         public void onSuccess(String location) {
             Log.d(TAG, "Gasp! restaurant added: " + location);
             mGaspRestaurantId = Integer.valueOf(location.substring(location.lastIndexOf("/") + 1));
-            setButtons();
+            loadGaspRestaurant();
         }
 
         @Override
@@ -73,13 +75,39 @@ public class PlacesDetailActivity extends FragmentActivity {
     public PlacesDetailActivity() {
     }
 
-    private Restaurant getGaspRestaurant() {
-        Restaurant restaurant = mGaspDatabase.getRestaurantByPlacesId(mPlaceDetail.getId());
-        if (restaurant != null) {
-            mGaspRestaurantId = restaurant.getId();
-            return restaurant;
-        }
-        else return null;
+    /**
+     * Look up the Gasp restaurant for this place in the background, then update buttons and reviews
+     */
+    private void loadGaspRestaurant() {
+        mAsyncDatabase.getRestaurantByPlacesId(mPlaceDetail.getId(), new AsyncGaspDatabase.Callback<Restaurant>() {
+            @Override
+            public void onResult(Restaurant restaurant) {
+                if (restaurant != null) {
+                    mGaspRestaurantId = restaurant.getId();
+                }
+                setButtons(restaurant);
+                showReviews(restaurant);
+                showRating(restaurant);
+            }
+        });
+    }
+
+    /**
+     * Show the restaurant's average star rating as the action bar subtitle
+     * @param restaurant Gasp restaurant, or null if this place is not a Gasp restaurant
+     */
+    private void showRating(Restaurant restaurant) {
+        if (restaurant == null || getActionBar() == null)
+            return;
+
+        mAsyncDatabase.getRatingByRestaurant(restaurant.getId(), new AsyncGaspDatabase.Callback<RestaurantRating>() {
+            @Override
+            public void onResult(RestaurantRating rating) {
+                if (rating != null && getActionBar() != null) {
+                    getActionBar().setSubtitle(rating.toString());
+                }
+            }
+        });
     }
 
     private void addGaspReview() {
@@ -107,6 +135,10 @@ public class PlacesDetailActivity extends FragmentActivity {
             restaurant.setName(mPlaceDetail.getName());
             restaurant.setPlacesId(mPlaceDetail.getId());
             restaurant.setWebsite(mPlaceDetail.getWebsite());
+            if (mPlaceDetail.getGeometry() != null && mPlaceDetail.getGeometry().getLocation() != null) {
+                restaurant.setLat(mPlaceDetail.getGeometry().getLocation().getLat().doubleValue());
+                restaurant.setLng(mPlaceDetail.getGeometry().getLocation().getLng().doubleValue());
+            }
 
             mGaspRestaurants.addRestaurant(restaurant, gaspUrl);
         } catch (Exception e) {
@@ -114,11 +146,10 @@ public class PlacesDetailActivity extends FragmentActivity {
         }
     }
 
-    private void setButtons() {
+    private void setButtons(Restaurant restaurant) {
         Button restaurantButton = (Button) findViewById(R.id.detail_restaurant_button);
         Button reviewButton = (Button) findViewById(R.id.detail_review_button);
 
-        Restaurant restaurant = getGaspRestaurant();
         if ( restaurant != null) {
             restaurantButton.setEnabled(false);
             reviewButton.setEnabled(true);
@@ -153,23 +184,21 @@ public class PlacesDetailActivity extends FragmentActivity {
     private void showLocationDetails(PlaceDetail place) {
         LocationDetailsFragment locationDetailsFragment =
                 (LocationDetailsFragment) getSupportFragmentManager().findFragmentById(R.id.detail_location_fragment);
-
-        Restaurant restaurant = getGaspRestaurant();
-        if ( restaurant != null) {
-            locationDetailsFragment.showLocationDetails(place);
-        } else {
-            locationDetailsFragment.showLocationDetails(place);
-        }
+        locationDetailsFragment.showLocationDetails(place);
     }
 
-    private void showReviews() {
-        ReviewDetailsFragment reviewDetailsFragment =
+    private void showReviews(Restaurant restaurant) {
+        final ReviewDetailsFragment reviewDetailsFragment =
                 (ReviewDetailsFragment) getSupportFragmentManager().findFragmentById(R.id.detail_review_fragment);
 
-        Restaurant restaurant = getGaspRestaurant();
         if (restaurant != null) {
-            List<Review> reviews = mGaspDatabase.getLastNReviewsByRestaurant(restaurant.getId(), 10);
-            reviewDetailsFragment.showReviewDetails(reviews);
+            mAsyncDatabase.getLastNReviewDetailsByRestaurant(restaurant.getId(), 10,
+                    new AsyncGaspDatabase.Callback<List<ReviewDetail>>() {
+                        @Override
+                        public void onResult(List<ReviewDetail> reviews) {
+                            reviewDetailsFragment.showReviewDetails(reviews);
+                        }
+                    });
         }
         else {
             reviewDetailsFragment.showReviewDetails(new ArrayList<Review>());
@@ -196,9 +225,8 @@ public class PlacesDetailActivity extends FragmentActivity {
 
             setContentView(R.layout.gasp_place_detail_layout);
 
-            // Populate Fragments
+            // Populate Fragments: Gasp restaurant and reviews are loaded in the background
             showLocationDetails(mPlaceDetail);
-            showReviews();
             showEvents(mPlaceDetail);
 
             // Hook uo button listeners
@@ -212,7 +240,13 @@ public class PlacesDetailActivity extends FragmentActivity {
     @Override
     protected void onPostCreate(Bundle savedInstanceState) {
         super.onPostCreate(savedInstanceState);
-        setButtons();
+        loadGaspRestaurant();
+    }
+
+    @Override
+    protected void onDestroy() {
+        mAsyncDatabase.cancelAll();
+        super.onDestroy();
     }
 
     @Override
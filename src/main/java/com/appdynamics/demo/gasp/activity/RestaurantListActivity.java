@@ -18,46 +18,51 @@ package com.appdynamics.demo.gasp.activity;
 
 import android.app.ListActivity;
 import android.content.Intent;
+import android.database.Cursor;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 
 import com.appdynamics.demo.gasp.R;
-import com.appdynamics.demo.gasp.adapter.RestaurantArrayAdapter;
+import com.appdynamics.demo.gasp.adapter.AsyncGaspDatabase;
+import com.appdynamics.demo.gasp.adapter.RestaurantCursorAdapter;
 import com.appdynamics.demo.gasp.adapter.RestaurantDataAdapter;
-import com.appdynamics.demo.gasp.model.Restaurant;
-
-import java.util.List;
 
 public class RestaurantListActivity extends ListActivity {
     private RestaurantDataAdapter restaurantAdapter;
+    private RestaurantCursorAdapter mRestaurantCursorAdapter;
+    private AsyncGaspDatabase mAsyncDatabase;
 
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        // Only converts Cursor rows (the queries run on their own adapters): never opened
         restaurantAdapter = new RestaurantDataAdapter(this);
-        restaurantAdapter.open();
-
-        // Get all restaurants in descending order
-        List<Restaurant> restaurants = restaurantAdapter.getAllDesc();
-
-        RestaurantArrayAdapter restaurantArrayAdapter =
-                new RestaurantArrayAdapter(this, restaurants);
-        setListAdapter(restaurantArrayAdapter);
+        mRestaurantCursorAdapter = new RestaurantCursorAdapter(this, restaurantAdapter);
+        setListAdapter(mRestaurantCursorAdapter);
+        mAsyncDatabase = new AsyncGaspDatabase(this);
     }
 
     @Override
     protected void onResume() {
-        restaurantAdapter.open();
+        // Get all restaurants in descending order: rows are read as they are displayed
+        mAsyncDatabase.getRestaurantCursorDesc(new AsyncGaspDatabase.Callback<Cursor>() {
+            @Override
+            public void onResult(Cursor cursor) {
+                mRestaurantCursorAdapter.changeCursor(cursor);
+            }
+        });
         super.onResume();
     }
 
     @Override
     protected void onPause() {
-        restaurantAdapter.close();
+        // Drop any pending query and close the current Cursor
+        mAsyncDatabase.cancelAll();
+        mRestaurantCursorAdapter.changeCursor(null);
         super.onPause();
     }
 
@@ -18,45 +18,51 @@ package com.appdynamics.demo.gasp.activity;
 
 import android.app.ListActivity;
 import android.content.Intent;
+import android.database.Cursor;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 
 import com.appdynamics.demo.gasp.R;
-import com.appdynamics.demo.gasp.adapter.ReviewArrayAdapter;
+import com.appdynamics.demo.gasp.adapter.AsyncGaspDatabase;
+import com.appdynamics.demo.gasp.adapter.ReviewCursorAdapter;
 import com.appdynamics.demo.gasp.adapter.ReviewDataAdapter;
-import com.appdynamics.demo.gasp.model.Review;
-
-import java.util.List;
 
 public class ReviewListActivity extends ListActivity {
     private ReviewDataAdapter reviewAdapter;
+    private ReviewCursorAdapter mReviewCursorAdapter;
+    private AsyncGaspDatabase mAsyncDatabase;
 
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        // Only converts Cursor rows (the queries run on their own adapters): never opened
         reviewAdapter = new ReviewDataAdapter(this);
-        reviewAdapter.open();
-
-        // Get all reviews in descending order
-        List<Review> reviews = reviewAdapter.getAllDesc();
-
-        ReviewArrayAdapter reviewArrayAdapter = new ReviewArrayAdapter(this, reviews);
-        setListAdapter(reviewArrayAdapter);
+        mReviewCursorAdapter = new ReviewCursorAdapter(this, reviewAdapter);
+        setListAdapter(mReviewCursorAdapter);
+        mAsyncDatabase = new AsyncGaspDatabase(this);
     }
 
     @Override
     protected void onResume() {
-        reviewAdapter.open();
+        // Get all reviews (with restaurant and user names) in descending order: rows are read as they are displayed
+        mAsyncDatabase.getReviewDetailCursorDesc(new AsyncGaspDatabase.Callback<Cursor>() {
+            @Override
+            public void onResult(Cursor cursor) {
+                mReviewCursorAdapter.changeCursor(cursor);
+            }
+        });
         super.onResume();
     }
 
     @Override
     protected void onPause() {
-        reviewAdapter.close();
+        // Drop any pending query and close the current Cursor
+        mAsyncDatabase.cancelAll();
+        mReviewCursorAdapter.changeCursor(null);
         super.onPause();
     }
 
@@ -18,46 +18,51 @@ package com.appdynamics.demo.gasp.activity;
 
 import android.app.ListActivity;
 import android.content.Intent;
+import android.database.Cursor;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 
 import com.appdynamics.demo.gasp.R;
-import com.appdynamics.demo.gasp.adapter.UserArrayAdapter;
+import com.appdynamics.demo.gasp.adapter.AsyncGaspDatabase;
+import com.appdynamics.demo.gasp.adapter.UserCursorAdapter;
 import com.appdynamics.demo.gasp.adapter.UserDataAdapter;
-import com.appdynamics.demo.gasp.model.User;
-
-import java.util.List;
 
 public class UserListActivity extends ListActivity {
     private UserDataAdapter userAdapter;
+    private UserCursorAdapter mUserCursorAdapter;
+    private AsyncGaspDatabase mAsyncDatabase;
 
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        // Only converts Cursor rows (the queries run on their own adapters): never opened
         userAdapter = new UserDataAdapter(this);
-        userAdapter.open();
-
-        // Get all users in descending order
-        List<User> users = userAdapter.getAllDesc();
-
-        UserArrayAdapter userArrayAdapter =
-                new UserArrayAdapter(this, users);
-        setListAdapter(userArrayAdapter);
+        mUserCursorAdapter = new UserCursorAdapter(this, userAdapter);
+        setListAdapter(mUserCursorAdapter);
+        mAsyncDatabase = new AsyncGaspDatabase(this);
     }
 
     @Override
     protected void onResume() {
-        userAdapter.open();
+        // Get all users in descending order: rows are read as they are displayed
+        mAsyncDatabase.getUserCursorDesc(new AsyncGaspDatabase.Callback<Cursor>() {
+            @Override
+            public void onResult(Cursor cursor) {
+                mUserCursorAdapter.changeCursor(cursor);
+            }
+        });
         super.onResume();
     }
 
     @Override
     protected void onPause() {
-        userAdapter.close();
+        // Drop any pending query and close the current Cursor
+        mAsyncDatabase.cancelAll();
+        mUserCursorAdapter.changeCursor(null);
         super.onPause();
     }
 
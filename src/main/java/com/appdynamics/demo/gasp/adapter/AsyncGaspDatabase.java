@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.adapter;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.appdynamics.demo.gasp.model.Restaurant;
+import com.appdynamics.demo.gasp.model.RestaurantRating;
+import com.appdynamics.demo.gasp.model.Review;
+import com.appdynamics.demo.gasp.model.ReviewDetail;
+import com.appdynamics.demo.gasp.model.User;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous facade over GaspDatabase and the Gasp data adapters
+ * Queries run on a small dedicated executor and results are delivered on the main thread.
+ * Call cancelAll() when the owning Activity or Fragment goes away: pending results are dropped.
+ * submit() and cancelAll() must be called on the main thread.
+ */
+public class AsyncGaspDatabase {
+    private static final String TAG = AsyncGaspDatabase.class.getName();
+
+    private static final int THREADS = 2;
+
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "GaspDatabase #" + mCount.incrementAndGet());
+        }
+    });
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Main thread callback for query results
+     *
+     * @param <R> The result type
+     */
+    public static abstract class Callback<R> {
+        public abstract void onResult(R result);
+
+        // Called instead of onResult() if the query threw (e.g. to reset a loading flag)
+        public void onError(Exception e) {
+        }
+    }
+
+    /**
+     * Query to run on the database executor
+     *
+     * @param <R> The result type
+     */
+    public static abstract class Query<R> {
+        protected abstract R run();
+
+        // Release any resources held by a result that will not be delivered (e.g. close a Cursor)
+        protected void discard(R result) {
+        }
+    }
+
+    private static class Request {
+        volatile boolean cancelled = false;
+        Future<?> future;
+    }
+
+    private final GaspDatabase mDatabase;
+    private final Set<Request> mPending = new HashSet<Request>();
+
+    public AsyncGaspDatabase(Context context) {
+        mDatabase = new GaspDatabase(context);
+    }
+
+    /**
+     * Run a query on the database executor and deliver the result on the main thread
+     *
+     * @param query    The query to run
+     * @param callback Called on the main thread with the result, or the failure, unless cancelled
+     */
+    public <R> void submit(final Query<R> query, final Callback<R> callback) {
+        final Request request = new Request();
+        mPending.add(request);
+
+        request.future = sExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (request.cancelled) {
+                    return;
+                }
+                final R result;
+                try {
+                    result = query.run();
+                } catch (final Exception e) {
+                    Log.e(TAG, "Query failed", e);
+                    sMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mPending.remove(request);
+                            if (!request.cancelled) {
+                                callback.onError(e);
+                            }
+                        }
+                    });
+                    return;
+                }
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mPending.remove(request);
+                        if (request.cancelled) {
+                            query.discard(result);
+                        } else {
+                            callback.onResult(result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Cancel all pending queries: no further callbacks will be made for them
+     */
+    public void cancelAll() {
+        for (Request request : mPending) {
+            request.cancelled = true;
+            request.future.cancel(false);
+        }
+        mPending.clear();
+    }
+
+    public void getRestaurantByPlacesId(final String placesId, Callback<Restaurant> callback) {
+        submit(new Query<Restaurant>() {
+            @Override
+            protected Restaurant run() {
+                return mDatabase.getRestaurantByPlacesId(placesId);
+            }
+        }, callback);
+    }
+
+    public void getRestaurantsByPlacesIds(final Collection<String> placesIds,
+                                          Callback<Map<String, Restaurant>> callback) {
+        submit(new Query<Map<String, Restaurant>>() {
+            @Override
+            protected Map<String, Restaurant> run() {
+                return mDatabase.getRestaurantsByPlacesIds(placesIds);
+            }
+        }, callback);
+    }
+
+    public void findRestaurantsWithin(final double lat, final double lng, final double radiusMetres,
+                                      Callback<List<Restaurant>> callback) {
+        submit(new Query<List<Restaurant>>() {
+            @Override
+            protected List<Restaurant> run() {
+                return mDatabase.findRestaurantsWithin(lat, lng, radiusMetres);
+            }
+        }, callback);
+    }
+
+    public void getLastNReviewsByRestaurant(final int id, final int n, Callback<List<Review>> callback) {
+        submit(new Query<List<Review>>() {
+            @Override
+            protected List<Review> run() {
+                return mDatabase.getLastNReviewsByRestaurant(id, n);
+            }
+        }, callback);
+    }
+
+    public void getRatingByRestaurant(final int id, Callback<RestaurantRating> callback) {
+        submit(new Query<RestaurantRating>() {
+            @Override
+            protected RestaurantRating run() {
+                return mDatabase.getRatingByRestaurant(id);
+            }
+        }, callback);
+    }
+
+    public void getRatingsByRestaurants(final Collection<Integer> ids,
+                                        Callback<Map<Integer, RestaurantRating>> callback) {
+        submit(new Query<Map<Integer, RestaurantRating>>() {
+            @Override
+            protected Map<Integer, RestaurantRating> run() {
+                return mDatabase.getRatingsByRestaurants(ids);
+            }
+        }, callback);
+    }
+
+    public void searchReviews(final String terms, final int limit, final int offset,
+                              Callback<List<SearchHit<Review>>> callback) {
+        submit(new Query<List<SearchHit<Review>>>() {
+            @Override
+            protected List<SearchHit<Review>> run() {
+                return mDatabase.searchReviews(terms, limit, offset);
+            }
+        }, callback);
+    }
+
+    public void searchRestaurants(final String terms, final int limit, final int offset,
+                                  Callback<List<SearchHit<Restaurant>>> callback) {
+        submit(new Query<List<SearchHit<Restaurant>>>() {
+            @Override
+            protected List<SearchHit<Restaurant>> run() {
+                return mDatabase.searchRestaurants(terms, limit, offset);
+            }
+        }, callback);
+    }
+
+    public void getReviewsPageDesc(final long beforeId, final int limit, Callback<List<Review>> callback) {
+        submit(new Query<List<Review>>() {
+            @Override
+            protected List<Review> run() {
+                return mDatabase.getReviewsPageDesc(beforeId, limit);
+            }
+        }, callback);
+    }
+
+    public void getReviewDetailsPageDesc(final long beforeId, final int limit,
+                                         Callback<List<ReviewDetail>> callback) {
+        submit(new Query<List<ReviewDetail>>() {
+            @Override
+            protected List<ReviewDetail> run() {
+                return mDatabase.getReviewDetailsPageDesc(beforeId, limit);
+            }
+        }, callback);
+    }
+
+    public void getLastNReviewDetailsByRestaurant(final int id, final int n, Callback<List<ReviewDetail>> callback) {
+        submit(new Query<List<ReviewDetail>>() {
+            @Override
+            protected List<ReviewDetail> run() {
+                return mDatabase.getLastNReviewDetailsByRestaurant(id, n);
+            }
+        }, callback);
+    }
+
+    public void getRestaurantsPageDesc(final long beforeId, final int limit, Callback<List<Restaurant>> callback) {
+        submit(new Query<List<Restaurant>>() {
+            @Override
+            protected List<Restaurant> run() {
+                return mDatabase.getRestaurantsPageDesc(beforeId, limit);
+            }
+        }, callback);
+    }
+
+    public void getUsersPageDesc(final long beforeId, final int limit, Callback<List<User>> callback) {
+        submit(new Query<List<User>>() {
+            @Override
+            protected List<User> run() {
+                return mDatabase.getUsersPageDesc(beforeId, limit);
+            }
+        }, callback);
+    }
+
+    /**
+     * Open a Cursor over all restaurants in descending order (see GaspDatabase.getRestaurantCursorDesc())
+     * The first Cursor window is filled on the executor; an undelivered Cursor is closed.
+     * The query uses its own adapter, so the caller's adapters may be closed while it runs.
+     *
+     * @param callback Receives the Cursor, which the caller then owns
+     */
+    public void getRestaurantCursorDesc(Callback<Cursor> callback) {
+        submit(new CursorQuery() {
+            @Override
+            protected Cursor open() {
+                return mDatabase.getRestaurantCursorDesc();
+            }
+        }, callback);
+    }
+
+    /**
+     * Open a Cursor over all users in descending order (see GaspDatabase.getUserCursorDesc())
+     *
+     * @param callback Receives the Cursor, which the caller then owns
+     */
+    public void getUserCursorDesc(Callback<Cursor> callback) {
+        submit(new CursorQuery() {
+            @Override
+            protected Cursor open() {
+                return mDatabase.getUserCursorDesc();
+            }
+        }, callback);
+    }
+
+    /**
+     * Open a Cursor over all reviews with restaurant and user names (see GaspDatabase.getReviewDetailCursorDesc())
+     *
+     * @param callback Receives the Cursor, which the caller then owns
+     */
+    public void getReviewDetailCursorDesc(Callback<Cursor> callback) {
+        submit(new CursorQuery() {
+            @Override
+            protected Cursor open() {
+                return mDatabase.getReviewDetailCursorDesc();
+            }
+        }, callback);
+    }
+
+    // Fills the first Cursor window on the executor; an undelivered Cursor is closed
+    private static abstract class CursorQuery extends Query<Cursor> {
+        protected abstract Cursor open();
+
+        @Override
+        protected Cursor run() {
+            Cursor cursor = open();
+            cursor.getCount();
+            return cursor;
+        }
+
+        @Override
+        protected void discard(Cursor cursor) {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.adapter;
+
+import android.database.Cursor;
+
+/**
+ * Column indexes for a set of column names, resolved once per Cursor rather than once per row
+ * Holds the last Cursor seen, so is not thread-safe: use one instance per GaspDataAdapter
+ */
+final class CursorColumns {
+    private final String[] mNames;
+    private Cursor mCursor;
+    private int[] mIndexes;
+
+    CursorColumns(String[] names) {
+        this.mNames = names;
+    }
+
+    /**
+     * @param cursor The Cursor about to be read
+     * @return Column indexes in the same order as the names (re-resolved only when the Cursor changes)
+     * @throws IllegalArgumentException if a column is missing from the Cursor
+     */
+    int[] indexesFor(Cursor cursor) {
+        if (cursor != mCursor) {
+            int[] indexes = new int[mNames.length];
+            for (int i = 0; i < mNames.length; i++) {
+                indexes[i] = cursor.getColumnIndexOrThrow(mNames[i]);
+            }
+            mIndexes = indexes;
+            mCursor = cursor;
+        }
+        return mIndexes;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.adapter;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.CursorAdapter;
+
+import com.appdynamics.demo.gasp.model.GaspDataObject;
+
+/**
+ * Abstract base class for Cursor-backed Gasp list adapters
+ * Rows are converted with fromCursor() only when bound to a visible view,
+ * and each row view keeps a holder for its child views so they are looked up once
+ *
+ * @param <T> The GaspDataObject type for the Adapter
+ * @param <H> The view holder type for a row
+ */
+abstract class GaspCursorAdapter<T extends GaspDataObject, H> extends CursorAdapter {
+    private final int mResource;
+
+    // Sub-classes must implement to convert Cursor rows (usually via their GaspDataAdapter)
+    abstract protected T fromCursor(Cursor cursor);
+
+    // Sub-classes must implement to create and populate row view holders
+    abstract protected H newHolder(View view);
+
+    abstract protected void bindHolder(H holder, T element);
+
+    /**
+     * Constructor: starts with no Cursor, use changeCursor() to supply data
+     *
+     * @param context  The Activity context
+     * @param resource Layout resource for each row
+     */
+    GaspCursorAdapter(Context context, int resource) {
+        super(context, null, 0);
+        this.mResource = resource;
+    }
+
+    @Override
+    public View newView(Context context, Cursor cursor, ViewGroup parent) {
+        View view = LayoutInflater.from(context).inflate(mResource, parent, false);
+        view.setTag(newHolder(view));
+        return view;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void bindView(View view, Context context, Cursor cursor) {
+        bindHolder((H) view.getTag(), fromCursor(cursor));
+    }
+}
@@ -6,12 +6,18 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
 import android.util.Log;
 
 import com.appdynamics.demo.gasp.model.GaspDataObject;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Copyright (c) 2013 Mark Prichard
@@ -38,8 +44,27 @@ import java.util.List;
 public abstract class GaspDataAdapter<T extends GaspDataObject> {
     private final String TAG = GaspDataAdapter.class.getName();
 
+    // Keyset pagination start values for getPageDesc() and getPageAsc()
+    public static final long FIRST_PAGE_DESC = Long.MAX_VALUE;
+    public static final long FIRST_PAGE_ASC = 0;
+
     SQLiteDatabase database;
-    private final GaspSQLiteHelper dbHelper;
+    private final Context context;
+    private CursorColumns columns;
+
+    // Actions waiting for the outermost transaction on each thread to commit (see runAfterCommit())
+    private static final ThreadLocal<PendingCommit> pendingCommit = new ThreadLocal<PendingCommit>() {
+        @Override
+        protected PendingCommit initialValue() {
+            return new PendingCommit();
+        }
+    };
+
+    private static class PendingCommit {
+        int depth;
+        boolean failed;
+        final List<Runnable> actions = new ArrayList<Runnable>();
+    }
 
     // Sub-classes must implement to support database calls
     abstract protected String getTableName();
@@ -51,31 +76,61 @@ public abstract class GaspDataAdapter<T extends GaspDataObject> {
     // Sub-classes must implement to allow conversion from database Cursors
     abstract protected void putValues(ContentValues values, T element);
 
-    abstract protected T fromCursor(Cursor cursor);
+    abstract protected T newElement();
 
     /**
-     * Constructor: instantiates the GaspSQLiteHelper, which mediates database access
+     * Copy the current Cursor row into an element (which may be re-used, so set every field)
+     *
+     * @param cursor  The Cursor, positioned on a row
+     * @param columns Column indexes, in getAllColumns() order
+     * @param element The object to populate
+     */
+    abstract protected void readRow(Cursor cursor, int[] columns, T element);
+
+    /**
+     * Callback for forEach(): receives each row in turn
+     *
+     * @param <T> The GaspDataObject type for the Adapter
+     */
+    public interface RowVisitor<T> {
+        void visit(T element);
+    }
+
+    /**
+     * Called for each row stored by insert() or insertAll(), inside the inserting transaction:
+     * sub-classes that mirror rows outside the database defer the work with runAfterCommit()
+     *
+     * @param element The inserted object
+     */
+    protected void onInserted(T element) {
+    }
+
+    /**
+     * Constructor: the shared GaspDatabaseManager, which mediates database access, is resolved on open()
+     * (Activities may construct adapters in field initializers, before their Context is attached)
      *
      * @param context The calling activity context
      */
     GaspDataAdapter(Context context) {
-        dbHelper = new GaspSQLiteHelper(context);
+        this.context = context;
     }
 
     /**
-     * Opens the Gasp database
+     * Opens the Gasp database: attaches this adapter to the shared connection (no-op if already open)
      *
      * @throws SQLException
      */
     public void open() throws SQLException {
-        database = dbHelper.getWritableDatabase();
+        if (database == null) {
+            database = GaspDatabaseManager.getInstance(context).getDatabase();
+        }
     }
 
     /**
-     * Closes the Gasp database
+     * Closes the Gasp database for this adapter: the shared connection stays open (see GaspDatabaseManager)
      */
     public void close() {
-        dbHelper.close();
+        database = null;
     }
 
     /**
@@ -102,12 +157,23 @@ public abstract class GaspDataAdapter<T extends GaspDataObject> {
         return lastId;
     }
 
+    /**
+     * Fast check for a stored row, using the table's in-memory id bitmap (see IdIndex),
+     * which is loaded from the primary key on first use
+     *
+     * @param id The row id
+     * @return true if a row with the id is stored
+     */
+    public boolean exists(int id) {
+        return IdIndex.forTable(getTableName()).contains(database, getIdColumnName(), id);
+    }
+
     /**
      * Insert a GaspDataObject into the Gasp database
      *
      * @param element The object to insert
      */
-    public void insert(T element) {
+    public void insert(final T element) {
         try {
             ContentValues values = new ContentValues();
             putValues(values, element);
@@ -115,6 +181,13 @@ public abstract class GaspDataAdapter<T extends GaspDataObject> {
             long insertId = database.insertOrThrow(getTableName(), null, values);
             if (insertId != -1) {
                 Log.d(TAG, "Inserted review with id: " + insertId);
+                runAfterCommit(new Runnable() {
+                    @Override
+                    public void run() {
+                        IdIndex.forTable(getTableName()).add(element.getId());
+                    }
+                });
+                onInserted(element);
             }
         } catch (SQLiteConstraintException e) {
             throw e;
@@ -123,15 +196,271 @@ public abstract class GaspDataAdapter<T extends GaspDataObject> {
         }
     }
 
+    /**
+     * Insert a collection of GaspDataObjects in a single transaction
+     *
+     * @param elements The objects to insert
+     * @return Counts of rows inserted and skipped
+     */
+    public InsertResult insertAll(Collection<T> elements) {
+        return insertAll(elements.iterator());
+    }
+
+    /**
+     * Insert GaspDataObjects from an Iterator in a single transaction, using one
+     * compiled INSERT statement for every row. Rows that violate a constraint
+     * (e.g. duplicate ids) are skipped without aborting the rest of the batch.
+     *
+     * @param iterator The objects to insert
+     * @return Counts of rows inserted and skipped
+     */
+    public InsertResult insertAll(Iterator<T> iterator) {
+        return insertAll(iterator, null);
+    }
+
+    /**
+     * Insert a batch of synced GaspDataObjects and update the sync state in the same transaction,
+     * so the stored sync progress always matches the stored rows
+     * The batch must hold every row after syncState.getLastId(): lastId advances to the highest id in it
+     *
+     * @param iterator  The objects to insert
+     * @param syncState Sync state for this table (see getSyncState()): updated and saved
+     * @return Counts of rows inserted and skipped
+     */
+    public InsertResult insertAll(Iterator<T> iterator, SyncState syncState) {
+        return insertAll(iterator, syncState, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Insert synced GaspDataObjects in transactions of at most batchSize rows, so that a
+     * streamed Iterator can be written with bounded memory and journal size
+     * The record count is saved with each batch; lastId only advances when the last batch
+     * commits, so an interrupted sync fetches the remaining rows again (already stored rows
+     * are skipped as duplicates)
+     *
+     * @param iterator  The objects to insert
+     * @param syncState Sync state for this table (see getSyncState()): updated and saved, may be null
+     * @param batchSize Maximum number of rows per transaction
+     * @return Counts of rows inserted and skipped
+     */
+    public InsertResult insertAll(Iterator<T> iterator, SyncState syncState, int batchSize) {
+        final String[] columns = getAllColumns();
+        final ContentValues values = new ContentValues(columns.length);
+        final InsertResult result = new InsertResult();
+        long maxId = 0;
+
+        SQLiteStatement statement = database.compileStatement(getInsertStatement(columns));
+        try {
+            do {
+                int batchInserted = 0;
+                boolean successful = false;
+                final List<Integer> batchIds = new ArrayList<Integer>();
+                beginTransaction();
+                try {
+                    for (int i = 0; i < batchSize && iterator.hasNext(); i++) {
+                        T element = iterator.next();
+                        maxId = Math.max(maxId, element.getId());
+                        values.clear();
+                        putValues(values, element);
+
+                        statement.clearBindings();
+                        for (int j = 0; j < columns.length; j++) {
+                            bindValue(statement, j + 1, values.get(columns[j]));
+                        }
+
+                        try {
+                            statement.executeInsert();
+                            batchInserted++;
+                            batchIds.add(element.getId());
+                            onInserted(element);
+                        } catch (SQLiteConstraintException e) {
+                            Log.d(TAG, "Skipped " + getTableName() + " row with id: " + element.getId());
+                            result.skipped++;
+                        }
+                    }
+                    if (syncState != null) {
+                        syncState.recordCount += batchInserted;
+                        if (!iterator.hasNext()) {
+                            syncState.lastId = Math.max(syncState.lastId, maxId);
+                        }
+                        saveSyncState(syncState);
+                    }
+                    runAfterCommit(new Runnable() {
+                        @Override
+                        public void run() {
+                            IdIndex.forTable(getTableName()).addAll(batchIds);
+                        }
+                    });
+                    successful = true;
+                } finally {
+                    endTransaction(successful);
+                }
+                result.inserted += batchInserted;
+            } while (iterator.hasNext());
+        } finally {
+            statement.close();
+        }
+
+        Log.d(TAG, "Inserted " + result.getInserted() + ", skipped " + result.getSkipped()
+                + " rows in " + getTableName());
+        return result;
+    }
+
+    /**
+     * Begin a (possibly nested) transaction: end it with endTransaction()
+     * Gasp adapters begin every transaction this way, so runAfterCommit() knows when data is committed
+     */
+    void beginTransaction() {
+        database.beginTransaction();
+        pendingCommit.get().depth++;
+    }
+
+    /**
+     * End a transaction begun with beginTransaction()
+     * When the outermost transaction ends, the runAfterCommit() actions are run if it committed,
+     * or dropped if it (or any transaction nested in it) was rolled back
+     *
+     * @param successful true to mark the transaction successful, false to roll it back
+     */
+    void endTransaction(boolean successful) {
+        PendingCommit pending = pendingCommit.get();
+        try {
+            if (successful) {
+                database.setTransactionSuccessful();
+            }
+            database.endTransaction();
+        } catch (RuntimeException e) {
+            successful = false;
+            throw e;
+        } finally {
+            pending.failed |= !successful;
+            if (--pending.depth == 0) {
+                List<Runnable> actions = new ArrayList<Runnable>(pending.actions);
+                boolean committed = !pending.failed;
+                pending.actions.clear();
+                pending.failed = false;
+                if (committed) {
+                    for (Runnable action : actions) {
+                        action.run();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Run an action once the data written so far is committed: at once outside a transaction,
+     * otherwise when the outermost transaction on this thread commits (never, if it rolls back)
+     *
+     * @param action Work that must only see committed rows, e.g. updating an in-memory cache
+     */
+    void runAfterCommit(Runnable action) {
+        PendingCommit pending = pendingCommit.get();
+        if (pending.depth > 0) {
+            pending.actions.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    private String getInsertStatement(String[] columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ")
+                .append(getTableName()).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "" : ", ").append(columns[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(")").toString();
+    }
+
+    private static void bindValue(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Integer || value instanceof Long) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Float || value instanceof Double) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+    /**
+     * Get the sync progress for this table
+     *
+     * @return Stored SyncState, or a new one (last id 0, never synced)
+     */
+    public SyncState getSyncState() {
+        SyncState syncState = new SyncState(getTableName());
+        Cursor cursor = database.query(GaspSQLiteHelper.SYNC_STATE_TABLE,
+                new String[]{GaspSQLiteHelper.SYNC_STATE_COLUMN_LAST_ID,
+                        GaspSQLiteHelper.SYNC_STATE_COLUMN_LAST_SYNC,
+                        GaspSQLiteHelper.SYNC_STATE_COLUMN_ETAG,
+                        GaspSQLiteHelper.SYNC_STATE_COLUMN_RECORD_COUNT},
+                GaspSQLiteHelper.SYNC_STATE_COLUMN_ENTITY + " = ?", new String[]{getTableName()},
+                null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                syncState.lastId = cursor.getLong(0);
+                syncState.lastSyncTime = cursor.getLong(1);
+                syncState.etag = cursor.getString(2);
+                syncState.recordCount = cursor.getLong(3);
+            }
+        } finally {
+            cursor.close();
+        }
+        return syncState;
+    }
+
+    /**
+     * Save sync state (last sync time set to now)
+     *
+     * @param syncState Sync state for this table
+     */
+    public void saveSyncState(SyncState syncState) {
+        saveSyncState(syncState, System.currentTimeMillis());
+    }
+
+    /**
+     * Save sync state with a given last sync time (see SyncScheduler, which reads it for freshness)
+     *
+     * @param syncState    Sync state for this table
+     * @param lastSyncTime Time of the last successful sync, or 0 to mark the table as never synced
+     */
+    public void saveSyncState(SyncState syncState, long lastSyncTime) {
+        syncState.lastSyncTime = lastSyncTime;
+
+        ContentValues values = new ContentValues();
+        values.put(GaspSQLiteHelper.SYNC_STATE_COLUMN_ENTITY, syncState.getEntity());
+        values.put(GaspSQLiteHelper.SYNC_STATE_COLUMN_LAST_ID, syncState.lastId);
+        values.put(GaspSQLiteHelper.SYNC_STATE_COLUMN_LAST_SYNC, syncState.lastSyncTime);
+        values.put(GaspSQLiteHelper.SYNC_STATE_COLUMN_ETAG, syncState.etag);
+        values.put(GaspSQLiteHelper.SYNC_STATE_COLUMN_RECORD_COUNT, syncState.recordCount);
+        database.insertWithOnConflict(GaspSQLiteHelper.SYNC_STATE_TABLE, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
     /**
      * Delete a GaspDataObject from the Gasp database
      *
      * @param element The object to delete
      */
     public void delete(T element) {
+        final IdIndex index = IdIndex.forTable(getTableName());
         Log.d(TAG, "Deleting review with id: " + element.getId());
+        // Before, so lookups during the delete reload; and after commit, in case one reloaded the row meanwhile
+        index.invalidate();
         database.delete(getTableName(), getIdColumnName()
                 + " = " + element.getId(), null);
+        runAfterCommit(new Runnable() {
+            @Override
+            public void run() {
+                index.invalidate();
+            }
+        });
     }
 
     /**
@@ -156,6 +485,21 @@ public abstract class GaspDataAdapter<T extends GaspDataObject> {
         return listFromCursor(cursor);
     }
 
+    /**
+     * Get a Cursor over all rows in descending order, for lazy binding via GaspCursorAdapter
+     * The id column is also returned as "_id" (after the getAllColumns() columns), as CursorAdapter requires
+     * The caller owns the Cursor and must close it
+     *
+     * @return Cursor positioned before the first row
+     */
+    public Cursor getCursorDesc() {
+        String[] allColumns = getAllColumns();
+        String[] columns = Arrays.copyOf(allColumns, allColumns.length + 1);
+        columns[allColumns.length] = getIdColumnName() + " AS " + BaseColumns._ID;
+        return database.query(getTableName(), columns,
+                null, null, null, null, getIdColumnName() + " DESC", null);
+    }
+
     /**
      * Get last N rows in descending order
      *
@@ -168,22 +512,170 @@ public abstract class GaspDataAdapter<T extends GaspDataObject> {
         return listFromCursor(cursor);
     }
 
+    /**
+     * Get a page of rows in descending id order (keyset pagination: no OFFSET scan)
+     *
+     * @param beforeId Return rows with id below this value: use FIRST_PAGE_DESC for the first page
+     * @param limit    Maximum number of rows to return
+     * @return ArrayList containing the GaspDataObjects
+     */
+    public List<T> getPageDesc(long beforeId, int limit) {
+        Cursor cursor = database.query(getTableName(), getAllColumns(),
+                getIdColumnName() + " < ?", new String[]{String.valueOf(beforeId)},
+                null, null, getIdColumnName() + " DESC", String.valueOf(limit));
+        return listFromCursor(cursor);
+    }
+
+    /**
+     * Get a page of rows in ascending id order (keyset pagination: no OFFSET scan)
+     *
+     * @param afterId Return rows with id above this value: use FIRST_PAGE_ASC for the first page
+     * @param limit   Maximum number of rows to return
+     * @return ArrayList containing the GaspDataObjects
+     */
+    public List<T> getPageAsc(long afterId, int limit) {
+        Cursor cursor = database.query(getTableName(), getAllColumns(),
+                getIdColumnName() + " > ?", new String[]{String.valueOf(afterId)},
+                null, null, getIdColumnName() + " ASC", String.valueOf(limit));
+        return listFromCursor(cursor);
+    }
+
+    /**
+     * Full-text search for sub-classes with an FTS table, ranked by number of matching terms (then newest first)
+     * Each search term is matched as a prefix and all terms must match; FTS operators are not passed through
+     *
+     * @param searchTable The FTS table mirroring this table (docid = row id)
+     * @param terms       Search text as entered by the user
+     * @param limit       Maximum number of results to return
+     * @param offset      Number of results to skip (for paging)
+     * @return ArrayList of SearchHits: the GaspDataObject plus a snippet with matches in <b>...</b>
+     */
+    List<SearchHit<T>> search(String searchTable, String terms, int limit, int offset) {
+        List<SearchHit<T>> hits = new ArrayList<SearchHit<T>>();
+        String match = toMatchQuery(terms);
+        if (match.length() == 0) {
+            return hits;
+        }
+
+        // fromCursor() finds the table columns by name; the snippet goes last
+        String[] columns = getAllColumns();
+        StringBuilder query = new StringBuilder("SELECT ");
+        for (String column : columns) {
+            query.append("t.").append(column).append(", ");
+        }
+        query.append("snippet(").append(searchTable).append(", '<b>', '</b>', '...', -1, 10)")
+                .append(" FROM ").append(searchTable)
+                .append(" JOIN ").append(getTableName()).append(" t ON t.").append(getIdColumnName())
+                .append(" = ").append(searchTable).append(".docid")
+                .append(" WHERE ").append(searchTable).append(" MATCH ?")
+                // offsets() returns 4 space-separated integers per matching term
+                .append(" ORDER BY length(offsets(").append(searchTable).append("))")
+                .append(" - length(replace(offsets(").append(searchTable).append("), ' ', '')) DESC, ")
+                .append("t.").append(getIdColumnName()).append(" DESC")
+                .append(" LIMIT ").append(limit).append(" OFFSET ").append(offset);
+
+        Cursor cursor = database.rawQuery(query.toString(), new String[]{match});
+        try {
+            while (cursor.moveToNext()) {
+                hits.add(new SearchHit<T>(fromCursor(cursor), cursor.getString(columns.length)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return hits;
+    }
+
+    /**
+     * Convert user search text to an FTS MATCH expression: lower-case prefix terms
+     * Punctuation separates terms, as it does for the simple tokenizer that built the index
+     * (so "it's" matches the indexed "it" "s"); lower case also stops words like "or" and "not"
+     * being parsed as FTS operators
+     */
+    static String toMatchQuery(String terms) {
+        StringBuilder match = new StringBuilder();
+        if (terms == null) {
+            return "";
+        }
+        for (String term : terms.toLowerCase(Locale.US).replaceAll("[^\\p{L}\\p{Nd}]+", " ").split(" ")) {
+            if (term.length() > 0) {
+                match.append(match.length() == 0 ? "" : " ").append(term).append('*');
+            }
+        }
+        return match.toString();
+    }
+
+    /**
+     * Visit every row in ascending id order, re-using one element: no per-row model allocation
+     * The visitor must copy anything it keeps, as the element is overwritten by the next row
+     *
+     * @param element The object to populate for each row
+     * @param visitor Receives the element for each row
+     */
+    public void forEach(T element, RowVisitor<T> visitor) {
+        Cursor cursor = database.query(getTableName(), getAllColumns(),
+                null, null, null, null, getIdColumnName() + " ASC");
+        forEach(cursor, element, visitor);
+    }
+
+    /**
+     * Visit every row of a Cursor, re-using one element: useful for aggregation and export
+     * Column indexes are resolved once; the Cursor is closed afterwards
+     *
+     * @param cursor  The Cursor object from a database query
+     * @param element The object to populate for each row
+     * @param visitor Receives the element for each row
+     */
+    void forEach(Cursor cursor, T element, RowVisitor<T> visitor) {
+        try {
+            int[] columns = columnsFor(cursor);
+            while (cursor.moveToNext()) {
+                readRow(cursor, columns, element);
+                visitor.visit(element);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Convert the current Cursor row to a new GaspDataObject
+     * Column indexes are looked up by name once per Cursor, so any column order is accepted
+     *
+     * @param cursor The Cursor, positioned on a row
+     * @return The GaspDataObject
+     */
+    protected T fromCursor(Cursor cursor) {
+        T element = newElement();
+        readRow(cursor, columnsFor(cursor), element);
+        return element;
+    }
+
+    private int[] columnsFor(Cursor cursor) {
+        if (columns == null) {
+            columns = new CursorColumns(getAllColumns());
+        }
+        return columns.indexesFor(cursor);
+    }
+
     /**
      * Generate an ArrayList from a Cursor: useful for sub-classes building custom queries
+     * The list is sized from the row count, and column indexes are resolved once
      *
      * @param cursor The Cursor object from a database query
      * @return ArrayList containing the GaspDataObjects
      */
     List<T> listFromCursor(Cursor cursor) {
-        List<T> list = new ArrayList<T>();
-
-        cursor.moveToFirst();
-        while (!cursor.isAfterLast()) {
-            T element = fromCursor(cursor);
-            list.add(element);
-            cursor.moveToNext();
+        try {
+            List<T> list = new ArrayList<T>(cursor.getCount());
+            int[] columns = columnsFor(cursor);
+            while (cursor.moveToNext()) {
+                T element = newElement();
+                readRow(cursor, columns, element);
+                list.add(element);
+            }
+            return list;
+        } finally {
+            cursor.close();
         }
-        cursor.close();
-        return list;
     }
 }
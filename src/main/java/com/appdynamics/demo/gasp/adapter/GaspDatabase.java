@@ -1,11 +1,20 @@
 package com.appdynamics.demo.gasp.adapter;
 
 import android.content.Context;
+import android.database.Cursor;
 
+import com.appdynamics.demo.gasp.model.GaspDataObject;
 import com.appdynamics.demo.gasp.model.Restaurant;
+import com.appdynamics.demo.gasp.model.RestaurantRating;
 import com.appdynamics.demo.gasp.model.Review;
+import com.appdynamics.demo.gasp.model.ReviewDetail;
+import com.appdynamics.demo.gasp.model.User;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Copyright (c) 2013 Mark Prichard
@@ -23,51 +32,303 @@ import java.util.List;
  * limitations under the License.
  */
 
+/**
+ * Query facade over the Gasp data adapters: each call opens an adapter on the shared database for its duration
+ * Each adapter is locked only while it is in use, since the adapters are shared between calls
+ * (see AsyncGaspDatabase): queries on different tables, and RestaurantCache hits, do not wait
+ */
 public class GaspDatabase {
     private final RestaurantDataAdapter mRestaurantAdapter;
     private final ReviewDataAdapter mReviewAdapter;
+    private final UserDataAdapter mUserAdapter;
+    private final RestaurantCache mRestaurantCache = RestaurantCache.getInstance();
 
     public GaspDatabase (Context context) {
         mRestaurantAdapter = new RestaurantDataAdapter(context);
         mReviewAdapter = new ReviewDataAdapter(context);
+        mUserAdapter = new UserDataAdapter(context);
+    }
+
+    /**
+     * Keyset-paginated queries: see GaspDataAdapter.getPageDesc() and getPageAsc()
+     */
+    public List<Review> getReviewsPageDesc(long beforeId, int limit) {
+        return getPageDesc(mReviewAdapter, beforeId, limit);
+    }
+
+    public List<Review> getReviewsPageAsc(long afterId, int limit) {
+        return getPageAsc(mReviewAdapter, afterId, limit);
+    }
+
+    /**
+     * Reviews with restaurant and user names from one joined query: see ReviewDataAdapter.getDetailPageDesc()
+     */
+    public List<ReviewDetail> getReviewDetailsPageDesc(long beforeId, int limit) {
+        List<ReviewDetail> page = new ArrayList<ReviewDetail>();
+        synchronized (mReviewAdapter) {
+            try {
+                mReviewAdapter.open();
+                page = mReviewAdapter.getDetailPageDesc(beforeId, limit);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                mReviewAdapter.close();
+            }
+        }
+        return page;
+    }
+
+    public List<ReviewDetail> getLastNReviewDetailsByRestaurant(int id, int n) {
+        List<ReviewDetail> reviews = new ArrayList<ReviewDetail>();
+        synchronized (mReviewAdapter) {
+            try {
+                mReviewAdapter.open();
+                reviews = mReviewAdapter.getLastNDetailsByRestaurant(id, n);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                mReviewAdapter.close();
+            }
+        }
+        return reviews;
+    }
+
+    public List<Restaurant> getRestaurantsPageDesc(long beforeId, int limit) {
+        return getPageDesc(mRestaurantAdapter, beforeId, limit);
+    }
+
+    public List<Restaurant> getRestaurantsPageAsc(long afterId, int limit) {
+        return getPageAsc(mRestaurantAdapter, afterId, limit);
+    }
+
+    public List<User> getUsersPageDesc(long beforeId, int limit) {
+        return getPageDesc(mUserAdapter, beforeId, limit);
+    }
+
+    public List<User> getUsersPageAsc(long afterId, int limit) {
+        return getPageAsc(mUserAdapter, afterId, limit);
+    }
+
+    /**
+     * Cursors over all rows in descending order, for lazy binding via GaspCursorAdapter
+     * (see GaspDataAdapter.getCursorDesc() and ReviewDataAdapter.getDetailCursorDesc())
+     * A Cursor stays valid after the adapter is closed: the caller owns it and must close it
+     */
+    public Cursor getRestaurantCursorDesc() {
+        synchronized (mRestaurantAdapter) {
+            try {
+                mRestaurantAdapter.open();
+                return mRestaurantAdapter.getCursorDesc();
+            } finally {
+                mRestaurantAdapter.close();
+            }
+        }
+    }
+
+    public Cursor getUserCursorDesc() {
+        synchronized (mUserAdapter) {
+            try {
+                mUserAdapter.open();
+                return mUserAdapter.getCursorDesc();
+            } finally {
+                mUserAdapter.close();
+            }
+        }
+    }
+
+    public Cursor getReviewDetailCursorDesc() {
+        synchronized (mReviewAdapter) {
+            try {
+                mReviewAdapter.open();
+                return mReviewAdapter.getDetailCursorDesc();
+            } finally {
+                mReviewAdapter.close();
+            }
+        }
+    }
+
+    private static <T extends GaspDataObject> List<T> getPageDesc(GaspDataAdapter<T> adapter,
+                                                                  long beforeId, int limit) {
+        List<T> page = new ArrayList<T>();
+        synchronized (adapter) {
+            try {
+                adapter.open();
+                page = adapter.getPageDesc(beforeId, limit);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                adapter.close();
+            }
+        }
+        return page;
+    }
+
+    private static <T extends GaspDataObject> List<T> getPageAsc(GaspDataAdapter<T> adapter,
+                                                                 long afterId, int limit) {
+        List<T> page = new ArrayList<T>();
+        synchronized (adapter) {
+            try {
+                adapter.open();
+                page = adapter.getPageAsc(afterId, limit);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                adapter.close();
+            }
+        }
+        return page;
     }
 
     public Restaurant getRestaurantByPlacesId(String placesId) {
-        Restaurant restaurant = null;
-        try {
-            mRestaurantAdapter.open();
-            restaurant = mRestaurantAdapter.findRestaurantByPlacesId(placesId);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            mRestaurantAdapter.close();
+        Restaurant restaurant = mRestaurantCache.get(placesId);
+        if (restaurant != null || mRestaurantCache.isComplete()) {
+            return restaurant;
+        }
+        synchronized (mRestaurantAdapter) {
+            try {
+                mRestaurantAdapter.open();
+                restaurant = mRestaurantAdapter.findRestaurantByPlacesId(placesId);
+                mRestaurantCache.put(restaurant);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                mRestaurantAdapter.close();
+            }
         }
         return restaurant;
     }
 
+    public Map<String, Restaurant> getRestaurantsByPlacesIds(Collection<String> placesIds) {
+        Map<String, Restaurant> restaurants = new HashMap<String, Restaurant>();
+        List<String> misses = new ArrayList<String>();
+        for (String placesId : placesIds) {
+            Restaurant restaurant = mRestaurantCache.get(placesId);
+            if (restaurant != null) {
+                restaurants.put(placesId, restaurant);
+            } else {
+                misses.add(placesId);
+            }
+        }
+        if (misses.isEmpty() || mRestaurantCache.isComplete()) {
+            return restaurants;
+        }
+        synchronized (mRestaurantAdapter) {
+            try {
+                mRestaurantAdapter.open();
+                Map<String, Restaurant> found = mRestaurantAdapter.findRestaurantsByPlacesIds(misses);
+                mRestaurantCache.putAll(found.values());
+                restaurants.putAll(found);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                mRestaurantAdapter.close();
+            }
+        }
+        return restaurants;
+    }
+
+    public List<Restaurant> findRestaurantsWithin(double lat, double lng, double radiusMetres) {
+        List<Restaurant> restaurants = new ArrayList<Restaurant>();
+        synchronized (mRestaurantAdapter) {
+            try {
+                mRestaurantAdapter.open();
+                restaurants = mRestaurantAdapter.findRestaurantsWithin(lat, lng, radiusMetres);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                mRestaurantAdapter.close();
+            }
+        }
+        return restaurants;
+    }
+
     public List<Review> getReviewsByRestaurant(int id) {
         List<Review> reviews = null;
-        try {
-            mReviewAdapter.open();
-            reviews = mReviewAdapter.getAllByRestaurant(id);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            mReviewAdapter.close();
+        synchronized (mReviewAdapter) {
+            try {
+                mReviewAdapter.open();
+                reviews = mReviewAdapter.getAllByRestaurant(id);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                mReviewAdapter.close();
+            }
         }
         return reviews;
     }
 
     public List<Review> getLastNReviewsByRestaurant(int id, @SuppressWarnings("SameParameterValue") int n) {
         List<Review> reviews = null;
-        try {
-            mReviewAdapter.open();
-            reviews = mReviewAdapter.getLastNByRestaurant(id, n);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            mReviewAdapter.close();
+        synchronized (mReviewAdapter) {
+            try {
+                mReviewAdapter.open();
+                reviews = mReviewAdapter.getLastNByRestaurant(id, n);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                mReviewAdapter.close();
+            }
         }
         return reviews;
     }
+
+    public RestaurantRating getRatingByRestaurant(int id) {
+        RestaurantRating rating = null;
+        synchronized (mReviewAdapter) {
+            try {
+                mReviewAdapter.open();
+                rating = mReviewAdapter.getRating(id);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                mReviewAdapter.close();
+            }
+        }
+        return rating;
+    }
+
+    public Map<Integer, RestaurantRating> getRatingsByRestaurants(Collection<Integer> ids) {
+        Map<Integer, RestaurantRating> ratings = new HashMap<Integer, RestaurantRating>();
+        synchronized (mReviewAdapter) {
+            try {
+                mReviewAdapter.open();
+                ratings = mReviewAdapter.getRatings(ids);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                mReviewAdapter.close();
+            }
+        }
+        return ratings;
+    }
+
+    public List<SearchHit<Review>> searchReviews(String terms, int limit, int offset) {
+        List<SearchHit<Review>> hits = new ArrayList<SearchHit<Review>>();
+        synchronized (mReviewAdapter) {
+            try {
+                mReviewAdapter.open();
+                hits = mReviewAdapter.search(terms, limit, offset);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                mReviewAdapter.close();
+            }
+        }
+        return hits;
+    }
+
+    public List<SearchHit<Restaurant>> searchRestaurants(String terms, int limit, int offset) {
+        List<SearchHit<Restaurant>> hits = new ArrayList<SearchHit<Restaurant>>();
+        synchronized (mRestaurantAdapter) {
+            try {
+                mRestaurantAdapter.open();
+                hits = mRestaurantAdapter.search(terms, limit, offset);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                mRestaurantAdapter.close();
+            }
+        }
+        return hits;
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.adapter;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * Maintenance tasks for the Gasp database: review retention and incremental vacuum
+ * Intended to run off the main thread (see DatabaseMaintenanceService)
+ */
+public class GaspDatabaseMaintenance {
+    private static final String TAG = GaspDatabaseMaintenance.class.getName();
+
+    // Free at most this many pages per run, so a run never holds the write lock for long
+    private static final int VACUUM_PAGES_PER_RUN = 2048;
+
+    private final Context mContext;
+
+    public GaspDatabaseMaintenance(Context context) {
+        this.mContext = context;
+    }
+
+    /**
+     * Delete reviews outside the retention policy
+     *
+     * @param policy Retention limits
+     * @return Number of reviews deleted
+     */
+    public int applyRetention(ReviewRetentionPolicy policy) {
+        int deleted = 0;
+        ReviewDataAdapter reviewData = new ReviewDataAdapter(mContext);
+        try {
+            reviewData.open();
+            if (policy.getMinReviewId() != ReviewRetentionPolicy.NO_LIMIT) {
+                deleted += reviewData.evictOlderThan(policy.getMinReviewId());
+            }
+            if (policy.getKeepPerRestaurant() != ReviewRetentionPolicy.NO_LIMIT) {
+                deleted += reviewData.evictAllButNewest(policy.getKeepPerRestaurant());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            reviewData.close();
+        }
+        Log.i(TAG, "Retention (" + policy + "): deleted " + deleted + " reviews");
+        return deleted;
+    }
+
+    /**
+     * Return free pages to the file system with PRAGMA incremental_vacuum
+     * Databases created before auto_vacuum was enabled (see GaspSQLiteHelper.onCreate()) are
+     * converted with a one-off VACUUM
+     *
+     * @return Bytes reclaimed
+     */
+    public long vacuum() {
+        SQLiteDatabase database = GaspDatabaseManager.getInstance(mContext).getDatabase();
+        long reclaimed = 0;
+        try {
+            long before = getSize(database);
+
+            if (DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null) != GaspSQLiteHelper.AUTO_VACUUM_INCREMENTAL) {
+                Log.i(TAG, "Enabling incremental auto_vacuum");
+                database.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                database.execSQL("VACUUM");
+            }
+
+            // Run as a query and step it to completion (getCount() fills the Cursor window)
+            Cursor cursor = database.rawQuery("PRAGMA incremental_vacuum(" + VACUUM_PAGES_PER_RUN + ")", null);
+            try {
+                cursor.getCount();
+            } finally {
+                cursor.close();
+            }
+
+            reclaimed = before - getSize(database);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        Log.i(TAG, "Vacuum: reclaimed " + reclaimed + " bytes");
+        return reclaimed;
+    }
+
+    private static long getSize(SQLiteDatabase database) {
+        return DatabaseUtils.longForQuery(database, "PRAGMA page_count", null)
+                * DatabaseUtils.longForQuery(database, "PRAGMA page_size", null);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.adapter;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * Process-wide owner of the Gasp database connection
+ * Data adapters use the shared SQLiteDatabase instead of opening their own helper:
+ * the database is opened (in write-ahead-log mode) on first use and then stays open for the
+ * life of the process, with no reference counting; SQLite releases it when the process exits.
+ * Readers do not block on the sync services, and activities moving between onPause and
+ * onResume do not reopen the file and re-run the open-time schema checks.
+ */
+final class GaspDatabaseManager {
+    private static final String TAG = GaspDatabaseManager.class.getName();
+
+    private static GaspDatabaseManager sInstance;
+
+    private final GaspSQLiteHelper mHelper;
+    private SQLiteDatabase mDatabase;
+
+    private GaspDatabaseManager(Context context) {
+        mHelper = new GaspSQLiteHelper(context);
+    }
+
+    /**
+     * Get the shared database manager for this process
+     *
+     * @param context Any Context: only the Application context is retained
+     * @return The GaspDatabaseManager singleton
+     */
+    static synchronized GaspDatabaseManager getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new GaspDatabaseManager(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Get the shared database, opening it on first use: never close it
+     *
+     * @return The shared SQLiteDatabase
+     */
+    synchronized SQLiteDatabase getDatabase() {
+        if (mDatabase == null || !mDatabase.isOpen()) {
+            mDatabase = mHelper.getWritableDatabase();
+            if (!mDatabase.enableWriteAheadLogging()) {
+                Log.w(TAG, "Unable to enable write-ahead logging");
+            }
+        }
+        return mDatabase;
+    }
+}
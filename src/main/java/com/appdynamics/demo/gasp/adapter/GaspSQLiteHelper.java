@@ -17,6 +17,7 @@
 package com.appdynamics.demo.gasp.adapter;
 
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
@@ -37,13 +38,46 @@ class GaspSQLiteHelper extends SQLiteOpenHelper {
     public static final String RESTAURANTS_COLUMN_NAME = "name";
     public static final String RESTAURANTS_COLUMN_WEBSITE = "website";
     public static final String RESTAURANTS_COLUMN_PLACESID = "placesId";
+    public static final String RESTAURANTS_COLUMN_LAT = "lat";
+    public static final String RESTAURANTS_COLUMN_LNG = "lng";
+    public static final String RESTAURANTS_COLUMN_GEOHASH = "geohash";
 
-    public static final String REVIEWS_TABLE = "reviews";
-    public static final String RESTAURANTS_TABLE = "restaurants";
-    public static final String USERS_TABLE = "users";
+    public static final String RATINGS_COLUMN_RESTAURANT_ID = "restaurant_id";
+    public static final String RATINGS_COLUMN_REVIEW_COUNT = "review_count";
+    public static final String RATINGS_COLUMN_STAR_TOTAL = "star_total";
+    public static final String RATINGS_COLUMN_EVICTED_MAX_ID = "evicted_max_id";
+
+    // Dropped in version 9
+    public static final String EVICTED_REVIEWS_COLUMN_ID = "id";
+
+    public static final String MAINTENANCE_COLUMN_NAME = "name";
+    public static final String MAINTENANCE_JOB_REVIEW_RETENTION = "review_retention";
+
+    public static final String SYNC_STATE_COLUMN_ENTITY = "entity";
+    public static final String SYNC_STATE_COLUMN_LAST_ID = "last_id";
+    public static final String SYNC_STATE_COLUMN_LAST_SYNC = "last_sync";
+    public static final String SYNC_STATE_COLUMN_ETAG = "etag";
+    public static final String SYNC_STATE_COLUMN_RECORD_COUNT = "record_count";
+
+    public static final String REVIEWS_TABLE = GaspTables.REVIEWS;
+    public static final String RESTAURANTS_TABLE = GaspTables.RESTAURANTS;
+    public static final String USERS_TABLE = GaspTables.USERS;
+    public static final String RATINGS_TABLE = "restaurant_ratings";
+    public static final String EVICTED_REVIEWS_TABLE = "evicted_reviews";
+    public static final String MAINTENANCE_TABLE = "maintenance_jobs";
+    public static final String SYNC_STATE_TABLE = "sync_state";
+    public static final String REVIEWS_SEARCH_TABLE = "reviews_fts";
+    public static final String RESTAURANTS_SEARCH_TABLE = "restaurants_fts";
 
     private static final String DATABASE_NAME = "gasp.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 9;
+
+    // PRAGMA auto_vacuum value for INCREMENTAL mode (see GaspDatabaseMaintenance.vacuum())
+    static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    public static final String RESTAURANTS_INDEX_PLACESID = "restaurants_placesId_idx";
+    public static final String REVIEWS_INDEX_RESTAURANT_ID = "reviews_restaurant_id_idx";
+    public static final String RESTAURANTS_INDEX_GEOHASH = "restaurants_geohash_idx";
 
     // SQL statements to create a new database.
     private static final String CREATE_REVIEWS_TABLE = "create table " +
@@ -66,25 +100,251 @@ class GaspSQLiteHelper extends SQLiteOpenHelper {
             USERS_COLUMN_ID + " integer primary key, " +
             USERS_COLUMN_NAME + " string not null);";
 
+    // Schema migrations: MIGRATIONS[n] upgrades the database from version n + 1 to n + 2
+    // Add one entry per DATABASE_VERSION increment; never edit or re-order existing entries
+    private static final String[][] MIGRATIONS = {
+            // Version 1 -> 2: secondary indexes for placesId and restaurant_id lookups
+            {
+                    "create index " + RESTAURANTS_INDEX_PLACESID + " on " +
+                            RESTAURANTS_TABLE + " (" + RESTAURANTS_COLUMN_PLACESID + ");",
+                    "create index " + REVIEWS_INDEX_RESTAURANT_ID + " on " +
+                            REVIEWS_TABLE + " (" + REVIEWS_COLUMN_RESTAURANT_ID + ");"
+            },
+            // Version 2 -> 3: per-restaurant rating aggregates, maintained by triggers so that
+            // they are updated in the same transaction as every review insert or delete
+            {
+                    "create table " + RATINGS_TABLE + " (" +
+                            RATINGS_COLUMN_RESTAURANT_ID + " integer primary key, " +
+                            RATINGS_COLUMN_REVIEW_COUNT + " integer not null, " +
+                            RATINGS_COLUMN_STAR_TOTAL + " integer not null);",
+                    "create trigger " + RATINGS_TABLE + "_insert after insert on " + REVIEWS_TABLE +
+                            " begin" +
+                            " insert or ignore into " + RATINGS_TABLE + " values (new." +
+                            REVIEWS_COLUMN_RESTAURANT_ID + ", 0, 0);" +
+                            " update " + RATINGS_TABLE + " set " +
+                            RATINGS_COLUMN_REVIEW_COUNT + " = " + RATINGS_COLUMN_REVIEW_COUNT + " + 1, " +
+                            RATINGS_COLUMN_STAR_TOTAL + " = " + RATINGS_COLUMN_STAR_TOTAL + " + new." +
+                            REVIEWS_COLUMN_STAR +
+                            " where " + RATINGS_COLUMN_RESTAURANT_ID + " = new." + REVIEWS_COLUMN_RESTAURANT_ID + ";" +
+                            " end;",
+                    "create trigger " + RATINGS_TABLE + "_delete after delete on " + REVIEWS_TABLE +
+                            " begin" +
+                            " update " + RATINGS_TABLE + " set " +
+                            RATINGS_COLUMN_REVIEW_COUNT + " = " + RATINGS_COLUMN_REVIEW_COUNT + " - 1, " +
+                            RATINGS_COLUMN_STAR_TOTAL + " = " + RATINGS_COLUMN_STAR_TOTAL + " - old." +
+                            REVIEWS_COLUMN_STAR +
+                            " where " + RATINGS_COLUMN_RESTAURANT_ID + " = old." + REVIEWS_COLUMN_RESTAURANT_ID + ";" +
+                            " end;",
+                    "insert into " + RATINGS_TABLE +
+                            " select " + REVIEWS_COLUMN_RESTAURANT_ID + ", count(*), sum(" + REVIEWS_COLUMN_STAR + ")" +
+                            " from " + REVIEWS_TABLE + " group by " + REVIEWS_COLUMN_RESTAURANT_ID + ";"
+            },
+            // Version 3 -> 4: full-text indexes on review comments and restaurant names (docid = row id),
+            // kept in step with the base tables by triggers on every insert and delete
+            {
+                    "create virtual table " + REVIEWS_SEARCH_TABLE + " using fts4(" + REVIEWS_COLUMN_COMMENT + ");",
+                    "create trigger " + REVIEWS_SEARCH_TABLE + "_insert after insert on " + REVIEWS_TABLE +
+                            " begin" +
+                            " insert into " + REVIEWS_SEARCH_TABLE + " (docid, " + REVIEWS_COLUMN_COMMENT + ")" +
+                            " values (new." + REVIEWS_COLUMN_ID + ", new." + REVIEWS_COLUMN_COMMENT + ");" +
+                            " end;",
+                    "create trigger " + REVIEWS_SEARCH_TABLE + "_delete after delete on " + REVIEWS_TABLE +
+                            " begin" +
+                            " delete from " + REVIEWS_SEARCH_TABLE + " where docid = old." + REVIEWS_COLUMN_ID + ";" +
+                            " end;",
+                    "insert into " + REVIEWS_SEARCH_TABLE + " (docid, " + REVIEWS_COLUMN_COMMENT + ")" +
+                            " select " + REVIEWS_COLUMN_ID + ", " + REVIEWS_COLUMN_COMMENT + " from " + REVIEWS_TABLE + ";",
+                    "create virtual table " + RESTAURANTS_SEARCH_TABLE + " using fts4(" + RESTAURANTS_COLUMN_NAME + ");",
+                    "create trigger " + RESTAURANTS_SEARCH_TABLE + "_insert after insert on " + RESTAURANTS_TABLE +
+                            " begin" +
+                            " insert into " + RESTAURANTS_SEARCH_TABLE + " (docid, " + RESTAURANTS_COLUMN_NAME + ")" +
+                            " values (new." + RESTAURANTS_COLUMN_ID + ", new." + RESTAURANTS_COLUMN_NAME + ");" +
+                            " end;",
+                    "create trigger " + RESTAURANTS_SEARCH_TABLE + "_delete after delete on " + RESTAURANTS_TABLE +
+                            " begin" +
+                            " delete from " + RESTAURANTS_SEARCH_TABLE + " where docid = old." + RESTAURANTS_COLUMN_ID + ";" +
+                            " end;",
+                    "insert into " + RESTAURANTS_SEARCH_TABLE + " (docid, " + RESTAURANTS_COLUMN_NAME + ")" +
+                            " select " + RESTAURANTS_COLUMN_ID + ", " + RESTAURANTS_COLUMN_NAME + " from " + RESTAURANTS_TABLE + ";"
+            },
+            // Version 4 -> 5: restaurant coordinates, with an indexed geohash for nearby (prefix range) queries
+            {
+                    "alter table " + RESTAURANTS_TABLE + " add column " + RESTAURANTS_COLUMN_LAT + " real;",
+                    "alter table " + RESTAURANTS_TABLE + " add column " + RESTAURANTS_COLUMN_LNG + " real;",
+                    "alter table " + RESTAURANTS_TABLE + " add column " + RESTAURANTS_COLUMN_GEOHASH + " string;",
+                    "create index " + RESTAURANTS_INDEX_GEOHASH + " on " +
+                            RESTAURANTS_TABLE + " (" + RESTAURANTS_COLUMN_GEOHASH + ");"
+            },
+            // Version 5 -> 6: reviews evicted by the retention job keep counting towards ratings:
+            // the job holds a maintenance_jobs row while deleting, which disables the ratings delete trigger
+            {
+                    "create table " + MAINTENANCE_TABLE + " (" +
+                            MAINTENANCE_COLUMN_NAME + " string primary key);",
+                    "drop trigger " + RATINGS_TABLE + "_delete;",
+                    "create trigger " + RATINGS_TABLE + "_delete after delete on " + REVIEWS_TABLE +
+                            " when not exists (select 1 from " + MAINTENANCE_TABLE + " where " +
+                            MAINTENANCE_COLUMN_NAME + " = '" + MAINTENANCE_JOB_REVIEW_RETENTION + "')" +
+                            " begin" +
+                            " update " + RATINGS_TABLE + " set " +
+                            RATINGS_COLUMN_REVIEW_COUNT + " = " + RATINGS_COLUMN_REVIEW_COUNT + " - 1, " +
+                            RATINGS_COLUMN_STAR_TOTAL + " = " + RATINGS_COLUMN_STAR_TOTAL + " - old." +
+                            REVIEWS_COLUMN_STAR +
+                            " where " + RATINGS_COLUMN_RESTAURANT_ID + " = old." + REVIEWS_COLUMN_RESTAURANT_ID + ";" +
+                            " end;"
+            },
+            // Version 6 -> 7: per-entity sync state (keyed by table name), seeded from the existing data
+            {
+                    "create table " + SYNC_STATE_TABLE + " (" +
+                            SYNC_STATE_COLUMN_ENTITY + " string primary key, " +
+                            SYNC_STATE_COLUMN_LAST_ID + " integer not null, " +
+                            SYNC_STATE_COLUMN_LAST_SYNC + " integer not null, " +
+                            SYNC_STATE_COLUMN_ETAG + " string, " +
+                            SYNC_STATE_COLUMN_RECORD_COUNT + " integer not null);",
+                    seedSyncState(REVIEWS_TABLE, REVIEWS_COLUMN_ID),
+                    seedSyncState(RESTAURANTS_TABLE, RESTAURANTS_COLUMN_ID),
+                    seedSyncState(USERS_TABLE, USERS_COLUMN_ID)
+            },
+            // Version 7 -> 8: ids of reviews evicted by the retention job, which still count towards
+            // ratings, so that a re-synced evicted review is not counted twice by the ratings insert trigger
+            // (the id is forgotten once the review is stored again, as a later delete then uncounts it)
+            {
+                    "create table " + EVICTED_REVIEWS_TABLE + " (" +
+                            EVICTED_REVIEWS_COLUMN_ID + " integer primary key);",
+                    "create trigger " + EVICTED_REVIEWS_TABLE + "_insert after delete on " + REVIEWS_TABLE +
+                            " when exists (select 1 from " + MAINTENANCE_TABLE + " where " +
+                            MAINTENANCE_COLUMN_NAME + " = '" + MAINTENANCE_JOB_REVIEW_RETENTION + "')" +
+                            " begin" +
+                            " insert or ignore into " + EVICTED_REVIEWS_TABLE + " values (old." + REVIEWS_COLUMN_ID + ");" +
+                            " end;",
+                    "drop trigger " + RATINGS_TABLE + "_insert;",
+                    "create trigger " + RATINGS_TABLE + "_insert after insert on " + REVIEWS_TABLE +
+                            " begin" +
+                            " insert or ignore into " + RATINGS_TABLE + " values (new." +
+                            REVIEWS_COLUMN_RESTAURANT_ID + ", 0, 0);" +
+                            " update " + RATINGS_TABLE + " set " +
+                            RATINGS_COLUMN_REVIEW_COUNT + " = " + RATINGS_COLUMN_REVIEW_COUNT + " + 1, " +
+                            RATINGS_COLUMN_STAR_TOTAL + " = " + RATINGS_COLUMN_STAR_TOTAL + " + new." +
+                            REVIEWS_COLUMN_STAR +
+                            " where " + RATINGS_COLUMN_RESTAURANT_ID + " = new." + REVIEWS_COLUMN_RESTAURANT_ID +
+                            " and not exists (select 1 from " + EVICTED_REVIEWS_TABLE + " where " +
+                            EVICTED_REVIEWS_COLUMN_ID + " = new." + REVIEWS_COLUMN_ID + ");" +
+                            " delete from " + EVICTED_REVIEWS_TABLE + " where " +
+                            EVICTED_REVIEWS_COLUMN_ID + " = new." + REVIEWS_COLUMN_ID + ";" +
+                            " end;"
+            },
+            // Version 8 -> 9: replace the evicted review ids, which grew with every eviction, by the highest
+            // evicted id per restaurant. Every review left after an eviction is newer, so a stored review at
+            // or below it is a re-synced evicted review: not counted again on insert, nor uncounted on delete
+            {
+                    "alter table " + RATINGS_TABLE + " add column " +
+                            RATINGS_COLUMN_EVICTED_MAX_ID + " integer not null default 0;",
+                    // Evicted ids were not recorded per restaurant: take the highest one below each restaurant's reviews
+                    "update " + RATINGS_TABLE + " set " + RATINGS_COLUMN_EVICTED_MAX_ID + " = ifnull((" +
+                            "select max(" + EVICTED_REVIEWS_COLUMN_ID + ") from " + EVICTED_REVIEWS_TABLE +
+                            " where " + EVICTED_REVIEWS_COLUMN_ID + " < ifnull((" +
+                            "select min(" + REVIEWS_COLUMN_ID + ") from " + REVIEWS_TABLE +
+                            " where " + REVIEWS_COLUMN_RESTAURANT_ID + " = " + RATINGS_TABLE + "." +
+                            RATINGS_COLUMN_RESTAURANT_ID + "), " + Long.MAX_VALUE + ")), 0);",
+                    "drop trigger " + EVICTED_REVIEWS_TABLE + "_insert;",
+                    "drop table " + EVICTED_REVIEWS_TABLE + ";",
+                    "create trigger " + RATINGS_TABLE + "_evict after delete on " + REVIEWS_TABLE +
+                            " when exists (select 1 from " + MAINTENANCE_TABLE + " where " +
+                            MAINTENANCE_COLUMN_NAME + " = '" + MAINTENANCE_JOB_REVIEW_RETENTION + "')" +
+                            " begin" +
+                            " update " + RATINGS_TABLE + " set " + RATINGS_COLUMN_EVICTED_MAX_ID + " = max(" +
+                            RATINGS_COLUMN_EVICTED_MAX_ID + ", old." + REVIEWS_COLUMN_ID + ")" +
+                            " where " + RATINGS_COLUMN_RESTAURANT_ID + " = old." + REVIEWS_COLUMN_RESTAURANT_ID + ";" +
+                            " end;",
+                    "drop trigger " + RATINGS_TABLE + "_insert;",
+                    "create trigger " + RATINGS_TABLE + "_insert after insert on " + REVIEWS_TABLE +
+                            " begin" +
+                            " insert or ignore into " + RATINGS_TABLE + " (" + RATINGS_COLUMN_RESTAURANT_ID + ", " +
+                            RATINGS_COLUMN_REVIEW_COUNT + ", " + RATINGS_COLUMN_STAR_TOTAL + ")" +
+                            " values (new." + REVIEWS_COLUMN_RESTAURANT_ID + ", 0, 0);" +
+                            " update " + RATINGS_TABLE + " set " +
+                            RATINGS_COLUMN_REVIEW_COUNT + " = " + RATINGS_COLUMN_REVIEW_COUNT + " + 1, " +
+                            RATINGS_COLUMN_STAR_TOTAL + " = " + RATINGS_COLUMN_STAR_TOTAL + " + new." +
+                            REVIEWS_COLUMN_STAR +
+                            " where " + RATINGS_COLUMN_RESTAURANT_ID + " = new." + REVIEWS_COLUMN_RESTAURANT_ID +
+                            " and new." + REVIEWS_COLUMN_ID + " > " + RATINGS_COLUMN_EVICTED_MAX_ID + ";" +
+                            " end;",
+                    "drop trigger " + RATINGS_TABLE + "_delete;",
+                    "create trigger " + RATINGS_TABLE + "_delete after delete on " + REVIEWS_TABLE +
+                            " when not exists (select 1 from " + MAINTENANCE_TABLE + " where " +
+                            MAINTENANCE_COLUMN_NAME + " = '" + MAINTENANCE_JOB_REVIEW_RETENTION + "')" +
+                            " begin" +
+                            " update " + RATINGS_TABLE + " set " +
+                            RATINGS_COLUMN_REVIEW_COUNT + " = " + RATINGS_COLUMN_REVIEW_COUNT + " - 1, " +
+                            RATINGS_COLUMN_STAR_TOTAL + " = " + RATINGS_COLUMN_STAR_TOTAL + " - old." +
+                            REVIEWS_COLUMN_STAR +
+                            " where " + RATINGS_COLUMN_RESTAURANT_ID + " = old." + REVIEWS_COLUMN_RESTAURANT_ID +
+                            " and old." + REVIEWS_COLUMN_ID + " > " + RATINGS_COLUMN_EVICTED_MAX_ID + ";" +
+                            " end;"
+            }
+    };
+
+    private static String seedSyncState(String table, String idColumn) {
+        return "insert into " + SYNC_STATE_TABLE +
+                " select '" + table + "', ifnull(max(" + idColumn + "), 0), 0, null, count(*) from " + table + ";";
+    }
+
+    // Set by onCreate(), for onOpen()
+    private boolean mCreated = false;
+
     public GaspSQLiteHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
     @Override
     public void onCreate(SQLiteDatabase database) {
+        // Only takes effect before the first table is created: older databases are converted by
+        // GaspDatabaseMaintenance.vacuum()
+        database.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        mCreated = true;
+
         database.execSQL(CREATE_RESTAURANTS_TABLE);
         database.execSQL(CREATE_REVIEWS_TABLE);
         database.execSQL(CREATE_USERS_TABLE);
+
+        // New databases get the version 1 schema plus every migration, so that
+        // fresh installs and upgraded installs always end up with the same schema
+        migrate(database, 1, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        // The platform may already have created its android_metadata table, so that the pragma in
+        // onCreate() was ignored: convert now, while the database is still empty and VACUUM is instant
+        if (mCreated) {
+            mCreated = false;
+            if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+                db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                db.execSQL("VACUUM");
+            }
+        }
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        Log.w(TAG, "Upgrading database from version " + oldVersion + " to "
-                + newVersion + ", which will destroy all old data");
-        db.execSQL("DROP TABLE IF EXISTS " + RESTAURANTS_TABLE);
-        db.execSQL("DROP TABLE IF EXISTS " + REVIEWS_TABLE);
-        db.execSQL("DROP TABLE IF EXISTS " + USERS_TABLE);
-        onCreate(db);
+        Log.i(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion);
+        migrate(db, oldVersion, newVersion);
+    }
+
+    /**
+     * Apply schema migrations in order, preserving existing data
+     * Called inside the SQLiteOpenHelper transaction, so a failed step rolls back the upgrade
+     *
+     * @param db         The database to migrate
+     * @param oldVersion Current schema version
+     * @param newVersion Target schema version
+     */
+    private static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (int version = oldVersion; version < newVersion; version++) {
+            Log.d(TAG, "Migrating database from version " + version + " to " + (version + 1));
+            for (String sql : MIGRATIONS[version - 1]) {
+                db.execSQL(sql);
+            }
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.adapter;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Geohash encoding for the restaurant spatial index (see http://en.wikipedia.org/wiki/Geohash)
+ * Nearby points share a geohash prefix, so an indexed prefix range scan finds candidates for a radius query
+ */
+final class GeoHash {
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    // 9 characters: cells of roughly 5m x 5m
+    static final int STORED_PRECISION = 9;
+
+    private static final double EARTH_RADIUS_METRES = 6371008.8;
+    private static final double METRES_PER_DEGREE = Math.PI * EARTH_RADIUS_METRES / 180;
+
+    private GeoHash() {
+    }
+
+    /**
+     * @param lat       Latitude (degrees)
+     * @param lng       Longitude (degrees)
+     * @param precision Number of geohash characters
+     * @return Geohash string
+     */
+    static String encode(double lat, double lng, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLng + maxLng) / 2;
+                if (lng >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLng = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLng = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Geohash cells covering a circle: the cell containing the centre plus its 8 neighbours,
+     * at the longest precision whose cells are at least radius wide and high
+     *
+     * @return Geohash prefixes (a single empty prefix if the circle needs the whole world)
+     */
+    static Set<String> coveringCells(double lat, double lng, double radiusMetres) {
+        Set<String> cells = new LinkedHashSet<String>();
+
+        int precision = 0;
+        double metresPerLngDegree = METRES_PER_DEGREE * Math.cos(Math.toRadians(lat));
+        while (precision < STORED_PRECISION
+                && cellHeight(precision + 1) * METRES_PER_DEGREE >= radiusMetres
+                && cellWidth(precision + 1) * metresPerLngDegree >= radiusMetres) {
+            precision++;
+        }
+        if (precision == 0) {
+            cells.add("");
+            return cells;
+        }
+
+        double height = cellHeight(precision);
+        double width = cellWidth(precision);
+        for (int dLat = -1; dLat <= 1; dLat++) {
+            for (int dLng = -1; dLng <= 1; dLng++) {
+                double cellLat = Math.max(-90, Math.min(90, lat + dLat * height));
+                double cellLng = lng + dLng * width;
+                if (cellLng < -180) cellLng += 360;
+                if (cellLng >= 180) cellLng -= 360;
+                cells.add(encode(cellLat, cellLng, precision));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Great-circle (haversine) distance between two points
+     *
+     * @return Distance in metres
+     */
+    static double distance(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METRES * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    // Cell size in degrees: of 5 bits per character, longitude takes the extra bit when the total is odd
+    private static double cellWidth(int precision) {
+        return 360 / Math.pow(2, (5 * precision + 1) / 2);
+    }
+
+    private static double cellHeight(int precision) {
+        return 180 / Math.pow(2, (5 * precision) / 2);
+    }
+}
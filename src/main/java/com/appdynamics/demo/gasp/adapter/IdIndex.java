@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.adapter;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide, in-memory bitmap of the primary keys stored in a Gasp table, so the GCM update
+ * path can skip rows it already has without a query or a network request (see GaspDataAdapter.exists())
+ * Loaded from the table on first use. GaspDataAdapter adds ids when the outermost transaction
+ * commits and clears the bitmap before and after deletes, so it may miss stored rows (they are
+ * fetched and skipped as duplicates) but never reports a row that is not stored.
+ */
+public final class IdIndex {
+    private static final String TAG = IdIndex.class.getName();
+
+    // 1 MB of bits: rows with higher ids are always reported missing
+    static final int MAX_ID = 8 * 1024 * 1024;
+
+    private static final ConcurrentHashMap<String, IdIndex> sIndexes = new ConcurrentHashMap<String, IdIndex>();
+
+    private final String mTableName;
+    private final AtomicInteger mHits = new AtomicInteger();
+    private final AtomicInteger mMisses = new AtomicInteger();
+
+    // Guarded by this: null until loaded
+    private BitSet mIds;
+
+    private IdIndex(String tableName) {
+        this.mTableName = tableName;
+    }
+
+    /**
+     * @param tableName A Gasp table, e.g. GaspSQLiteHelper.REVIEWS_TABLE
+     * @return The index for the table
+     */
+    public static IdIndex forTable(String tableName) {
+        IdIndex index = sIndexes.get(tableName);
+        if (index == null) {
+            IdIndex newIndex = new IdIndex(tableName);
+            index = sIndexes.putIfAbsent(tableName, newIndex);
+            if (index == null) {
+                index = newIndex;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return Number of lookups that found the id stored
+     */
+    public int getHits() {
+        return mHits.get();
+    }
+
+    /**
+     * @return Number of lookups that did not find the id
+     */
+    public int getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * Look up an id, loading the bitmap from the table first if necessary
+     *
+     * @param database Open database
+     * @param idColumn Primary key column of the table
+     * @param id       The id to look up
+     * @return true if a row with the id is stored
+     */
+    boolean contains(SQLiteDatabase database, String idColumn, int id) {
+        boolean found;
+        synchronized (this) {
+            if (mIds == null) {
+                load(database, idColumn);
+            }
+            found = id >= 0 && mIds.get(id);
+        }
+        (found ? mHits : mMisses).incrementAndGet();
+        return found;
+    }
+
+    private void load(SQLiteDatabase database, String idColumn) {
+        BitSet ids = new BitSet();
+        Cursor cursor = database.query(mTableName, new String[]{idColumn}, null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                if (id >= 0 && id < MAX_ID) {
+                    ids.set((int) id);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        mIds = ids;
+        Log.d(TAG, "Loaded " + ids.cardinality() + " " + mTableName + " ids");
+    }
+
+    /**
+     * Record ids whose inserts have been committed; no-op until the bitmap is loaded
+     */
+    synchronized void addAll(Collection<Integer> ids) {
+        if (mIds != null) {
+            for (Integer id : ids) {
+                add(id);
+            }
+        }
+    }
+
+    synchronized void add(int id) {
+        if (mIds != null && id >= 0 && id < MAX_ID) {
+            mIds.set(id);
+        }
+    }
+
+    /**
+     * Rows were deleted: reload the bitmap on the next lookup
+     */
+    synchronized void invalidate() {
+        mIds = null;
+    }
+}
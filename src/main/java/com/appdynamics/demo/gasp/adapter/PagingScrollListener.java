@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.adapter;
+
+import android.widget.AbsListView;
+
+/**
+ * ListView scroll listener for paged Gasp data screens
+ * Requests the next page as the user scrolls near the end of the list, one page at a time,
+ * until onPageLoaded() reports that the last page has been loaded
+ */
+public abstract class PagingScrollListener implements AbsListView.OnScrollListener {
+    // Start loading when fewer than this many rows remain below the visible rows
+    private static final int VISIBLE_THRESHOLD = 10;
+
+    private boolean mLastPage = false;
+    private boolean mLoading = false;
+
+    /**
+     * Start loading the next page of rows: call onPageLoaded() when it has been appended,
+     * or onPageFailed() if it could not be loaded
+     */
+    protected abstract void loadNextPage();
+
+    /**
+     * Request the next page, unless a page is already loading or the last page has been loaded
+     */
+    public void requestNextPage() {
+        if (!mLoading && !mLastPage) {
+            mLoading = true;
+            loadNextPage();
+        }
+    }
+
+    /**
+     * Report that a requested page has been appended
+     *
+     * @param morePages true if more rows may be available
+     */
+    public void onPageLoaded(boolean morePages) {
+        mLoading = false;
+        mLastPage = !morePages;
+    }
+
+    /**
+     * Report that a requested page could not be loaded: it is requested again on the next scroll
+     */
+    public void onPageFailed() {
+        mLoading = false;
+    }
+
+    /**
+     * Allow paging to restart (e.g. after the list has been recreated)
+     */
+    public void reset() {
+        mLoading = false;
+        mLastPage = false;
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        if (totalItemCount > 0 && firstVisibleItem + visibleItemCount + VISIBLE_THRESHOLD >= totalItemCount) {
+            requestNextPage();
+        }
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+    }
+}
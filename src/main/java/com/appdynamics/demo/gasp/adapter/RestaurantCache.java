@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.adapter;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.appdynamics.demo.gasp.model.Restaurant;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide, memory-bounded cache of Google Places id to Gasp Restaurant
+ * Warmed from the restaurants table on a background thread and updated by RestaurantDataAdapter
+ * as inserted rows are committed. Holds the most recently used MAX_ENTRIES restaurants.
+ * While the cache holds the whole table, a miss means the restaurant does not exist.
+ */
+public final class RestaurantCache {
+    private static final String TAG = RestaurantCache.class.getName();
+
+    private static final int MAX_ENTRIES = 1000;
+
+    private static final RestaurantCache sInstance = new RestaurantCache();
+
+    // Access-ordered: the least recently used restaurant is evicted first
+    private final LinkedHashMap<String, Restaurant> mRestaurants =
+            new LinkedHashMap<String, Restaurant>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Restaurant> eldest) {
+                    if (size() <= MAX_ENTRIES) {
+                        return false;
+                    }
+                    onEvicted();
+                    return true;
+                }
+            };
+
+    // Places ids removed while warming: the table snapshot may still hold them
+    private final Set<String> mRemoved = new HashSet<String>();
+
+    // Bumped by every removal and eviction: a warm that sees it change is not complete
+    private int mGeneration = 0;
+    private boolean mComplete = false;
+    private boolean mWarming = false;
+
+    private RestaurantCache() {
+    }
+
+    public static RestaurantCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Load the restaurants table into the cache on a background thread
+     *
+     * @param context Any Context: used to open the shared database
+     */
+    public synchronized void warm(Context context) {
+        if (mComplete || mWarming) {
+            return;
+        }
+        mWarming = true;
+        mRemoved.clear();
+        final int generation = mGeneration;
+
+        final RestaurantDataAdapter restaurantData = new RestaurantDataAdapter(context);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                List<Restaurant> restaurants = null;
+                try {
+                    restaurantData.open();
+                    restaurants = restaurantData.getAll();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    restaurantData.close();
+                    onWarmed(restaurants, generation);
+                }
+            }
+        }, TAG).start();
+    }
+
+    /**
+     * @param placesId Google Places id
+     * @return Cached Restaurant, or null if not cached
+     */
+    public synchronized Restaurant get(String placesId) {
+        return placesId == null ? null : mRestaurants.get(placesId);
+    }
+
+    /**
+     * @return true if the cache holds every row in the restaurants table
+     */
+    public synchronized boolean isComplete() {
+        return mComplete;
+    }
+
+    /**
+     * Add or replace a restaurant (e.g. after a database insert or read-through miss)
+     * Evicts the least recently used restaurant when full
+     *
+     * @param restaurant The restaurant to cache
+     */
+    public synchronized void put(Restaurant restaurant) {
+        if (restaurant == null || restaurant.getPlacesId() == null) {
+            return;
+        }
+        mRestaurants.put(restaurant.getPlacesId(), restaurant);
+    }
+
+    /**
+     * Add or replace a collection of restaurants
+     *
+     * @param restaurants The restaurants to cache
+     */
+    public synchronized void putAll(Collection<Restaurant> restaurants) {
+        for (Restaurant restaurant : restaurants) {
+            put(restaurant);
+        }
+    }
+
+    /**
+     * Remove a restaurant (e.g. after a database delete)
+     *
+     * @param restaurant The restaurant to remove
+     */
+    public synchronized void remove(Restaurant restaurant) {
+        if (restaurant == null || restaurant.getPlacesId() == null) {
+            return;
+        }
+        mRestaurants.remove(restaurant.getPlacesId());
+        mGeneration++;
+        if (mWarming) {
+            mRemoved.add(restaurant.getPlacesId());
+        }
+    }
+
+    private void onEvicted() {
+        // Called with the lock held: misses must now fall back to the database
+        mGeneration++;
+        mComplete = false;
+    }
+
+    private synchronized void onWarmed(List<Restaurant> restaurants, int generation) {
+        mWarming = false;
+        if (restaurants == null) {
+            mRemoved.clear();
+            return;
+        }
+        int count = 0;
+        for (Restaurant restaurant : restaurants) {
+            String placesId = restaurant.getPlacesId();
+            // Rows committed while we were loading take precedence; removed rows stay removed
+            if (placesId == null || mRestaurants.containsKey(placesId) || mRemoved.contains(placesId)) {
+                continue;
+            }
+            if (++count > MAX_ENTRIES) {
+                break;
+            }
+            mRestaurants.put(placesId, restaurant);
+        }
+        mRemoved.clear();
+        mComplete = restaurants.size() <= MAX_ENTRIES && mGeneration == generation;
+        Log.d(TAG, "Cached " + mRestaurants.size() + " restaurants, complete: " + mComplete);
+    }
+}
@@ -0,0 +1,73 @@
+package com.appdynamics.demo.gasp.adapter;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.view.View;
+import android.widget.TextView;
+
+import com.appdynamics.demo.gasp.R;
+import com.appdynamics.demo.gasp.model.Restaurant;
+
+/**
+ * Copyright (c) 2013 Mark Prichard
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * CursorAdapter subclass for use with ListActivity (RestaurantListActivity)
+ * See gasp_restaurant_list.xml for layout views
+ */
+public class RestaurantCursorAdapter extends GaspCursorAdapter<Restaurant, RestaurantCursorAdapter.ViewHolder> {
+
+    private final RestaurantDataAdapter mRestaurantData;
+
+    static class ViewHolder {
+        TextView url;
+        TextView name;
+        TextView website;
+        TextView placesId;
+    }
+
+    /**
+     * Default constructor
+     * @param context The Activity context
+     * @param restaurantData The RestaurantDataAdapter used to read Cursor rows
+     */
+    public RestaurantCursorAdapter(Context context, RestaurantDataAdapter restaurantData) {
+        super(context, R.layout.gasp_restaurant_list);
+        this.mRestaurantData = restaurantData;
+    }
+
+    @Override
+    protected Restaurant fromCursor(Cursor cursor) {
+        return mRestaurantData.fromCursor(cursor);
+    }
+
+    @Override
+    protected ViewHolder newHolder(View view) {
+        ViewHolder holder = new ViewHolder();
+        holder.url = (TextView) view.findViewById(R.id.restaurant_url);
+        holder.name = (TextView) view.findViewById(R.id.restaurant_name);
+        holder.website = (TextView) view.findViewById(R.id.restaurant_website);
+        holder.placesId = (TextView) view.findViewById(R.id.restaurant_placesId);
+        return holder;
+    }
+
+    @Override
+    protected void bindHolder(ViewHolder holder, Restaurant restaurant) {
+        holder.url.setText("Url: " + restaurant.getUrl());
+        holder.name.setText("Name: " + restaurant.getName());
+        holder.website.setText("Website: " + restaurant.getWebsite());
+        holder.placesId.setText("PlacesId: " + restaurant.getPlacesId());
+    }
+}
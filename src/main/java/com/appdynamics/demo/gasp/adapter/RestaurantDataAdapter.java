@@ -23,16 +23,31 @@ import android.database.Cursor;
 import com.appdynamics.demo.gasp.model.Restaurant;
 import com.appdynamics.eumagent.runtime.Instrumentation;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Adapter class mapping the Gasp database to com.appdynamics.demo.gasp.model.Restaurant
  * Implements insert, cursor and list methods: main interface to Restaurant data
  */
 public class RestaurantDataAdapter extends GaspDataAdapter<Restaurant> {
 
+    // Keep IN (...) lists well under SQLITE_MAX_VARIABLE_NUMBER (999)
+    private static final int PLACES_ID_CHUNK_SIZE = 200;
+
     private final String[] allColumns = {GaspSQLiteHelper.RESTAURANTS_COLUMN_ID,
             GaspSQLiteHelper.RESTAURANTS_COLUMN_NAME,
             GaspSQLiteHelper.RESTAURANTS_COLUMN_WEBSITE,
-            GaspSQLiteHelper.RESTAURANTS_COLUMN_PLACESID};
+            GaspSQLiteHelper.RESTAURANTS_COLUMN_PLACESID,
+            GaspSQLiteHelper.RESTAURANTS_COLUMN_LAT,
+            GaspSQLiteHelper.RESTAURANTS_COLUMN_LNG,
+            GaspSQLiteHelper.RESTAURANTS_COLUMN_GEOHASH};
 
     private static final String idColumnName = GaspSQLiteHelper.RESTAURANTS_COLUMN_ID;
     private static final String tableName = GaspSQLiteHelper.RESTAURANTS_TABLE;
@@ -62,16 +77,44 @@ public class RestaurantDataAdapter extends GaspDataAdapter<Restaurant> {
         values.put(GaspSQLiteHelper.RESTAURANTS_COLUMN_NAME, restaurant.getName());
         values.put(GaspSQLiteHelper.RESTAURANTS_COLUMN_WEBSITE, restaurant.getWebsite());
         values.put(GaspSQLiteHelper.RESTAURANTS_COLUMN_PLACESID, restaurant.getPlacesId());
+        values.put(GaspSQLiteHelper.RESTAURANTS_COLUMN_LAT, restaurant.getLat());
+        values.put(GaspSQLiteHelper.RESTAURANTS_COLUMN_LNG, restaurant.getLng());
+        values.put(GaspSQLiteHelper.RESTAURANTS_COLUMN_GEOHASH, restaurant.hasLocation()
+                ? GeoHash.encode(restaurant.getLat(), restaurant.getLng(), GeoHash.STORED_PRECISION)
+                : null);
     }
 
     @Override
-    protected Restaurant fromCursor(Cursor cursor) {
-        Restaurant restaurant = new Restaurant();
-        restaurant.setId(cursor.getInt(0));
-        restaurant.setName(cursor.getString(1));
-        restaurant.setWebsite(cursor.getString(2));
-        restaurant.setPlacesId(cursor.getString(3));
-        return restaurant;
+    protected Restaurant newElement() {
+        return new Restaurant();
+    }
+
+    @Override
+    protected void readRow(Cursor cursor, int[] columns, Restaurant restaurant) {
+        restaurant.setId(cursor.getInt(columns[0]));
+        restaurant.setName(cursor.getString(columns[1]));
+        restaurant.setWebsite(cursor.getString(columns[2]));
+        restaurant.setPlacesId(cursor.getString(columns[3]));
+        boolean hasLocation = !cursor.isNull(columns[4]) && !cursor.isNull(columns[5]);
+        restaurant.setLat(hasLocation ? cursor.getDouble(columns[4]) : null);
+        restaurant.setLng(hasLocation ? cursor.getDouble(columns[5]) : null);
+    }
+
+    @Override
+    protected void onInserted(final Restaurant restaurant) {
+        // Only committed rows are cached: a rolled back sync leaves no phantom entries
+        runAfterCommit(new Runnable() {
+            @Override
+            public void run() {
+                RestaurantCache.getInstance().put(restaurant);
+            }
+        });
+    }
+
+    @Override
+    public void delete(Restaurant restaurant) {
+        super.delete(restaurant);
+        RestaurantCache.getInstance().remove(restaurant);
     }
 
     /**
@@ -101,4 +144,106 @@ public class RestaurantDataAdapter extends GaspDataAdapter<Restaurant> {
         Instrumentation.stopTimer("findRestaurantsByPlacesId");
         return restaurant;
     }
+
+    /**
+     * Lookup restaurants for a set of Google Places API ids, using chunked IN (...) queries
+     *
+     * @param placesIds Google Places ids
+     * @return Map of Google Places id to Gasp Restaurant: ids with no match are not included
+     */
+    public Map<String, Restaurant> findRestaurantsByPlacesIds(Collection<String> placesIds) {
+        Instrumentation.startTimer("findRestaurantsByPlacesIds");
+        Map<String, Restaurant> restaurants = new HashMap<String, Restaurant>();
+        List<String> ids = new ArrayList<String>(placesIds);
+
+        for (int start = 0; start < ids.size(); start += PLACES_ID_CHUNK_SIZE) {
+            List<String> chunk = ids.subList(start, Math.min(start + PLACES_ID_CHUNK_SIZE, ids.size()));
+
+            StringBuilder selection = new StringBuilder(GaspSQLiteHelper.RESTAURANTS_COLUMN_PLACESID)
+                    .append(" IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                selection.append(i == 0 ? "?" : ", ?");
+            }
+            selection.append(")");
+
+            Cursor cursor = database.query(GaspSQLiteHelper.RESTAURANTS_TABLE, allColumns,
+                    selection.toString(), chunk.toArray(new String[chunk.size()]),
+                    null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    Restaurant restaurant = fromCursor(cursor);
+                    restaurants.put(restaurant.getPlacesId(), restaurant);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        Instrumentation.stopTimer("findRestaurantsByPlacesIds");
+        return restaurants;
+    }
+
+    /**
+     * Find restaurants within a radius, using the geohash index: a prefix range scan over the
+     * geohash cells covering the circle, then an exact distance check on the candidates
+     * Restaurants without coordinates are never returned
+     *
+     * @param lat          Latitude of the centre (degrees)
+     * @param lng          Longitude of the centre (degrees)
+     * @param radiusMetres Search radius (metres)
+     * @return ArrayList of Restaurants, nearest first
+     */
+    public List<Restaurant> findRestaurantsWithin(final double lat, final double lng, double radiusMetres) {
+        Instrumentation.startTimer("findRestaurantsWithin");
+        Set<String> cells = GeoHash.coveringCells(lat, lng, radiusMetres);
+
+        StringBuilder selection = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<String>();
+        for (String cell : cells) {
+            // Prefix match as a range, so the geohash index is used: '{' sorts after every geohash character
+            selection.append(selection.length() == 0 ? "(" : " OR (")
+                    .append(GaspSQLiteHelper.RESTAURANTS_COLUMN_GEOHASH).append(" >= ? AND ")
+                    .append(GaspSQLiteHelper.RESTAURANTS_COLUMN_GEOHASH).append(" < ?)");
+            selectionArgs.add(cell);
+            selectionArgs.add(cell + "{");
+        }
+
+        final Map<Restaurant, Double> distances = new HashMap<Restaurant, Double>();
+        Cursor cursor = database.query(GaspSQLiteHelper.RESTAURANTS_TABLE, allColumns,
+                selection.toString(), selectionArgs.toArray(new String[selectionArgs.size()]),
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                Restaurant restaurant = fromCursor(cursor);
+                double distance = GeoHash.distance(lat, lng, restaurant.getLat(), restaurant.getLng());
+                if (distance <= radiusMetres) {
+                    distances.put(restaurant, distance);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        List<Restaurant> restaurants = new ArrayList<Restaurant>(distances.keySet());
+        Collections.sort(restaurants, new Comparator<Restaurant>() {
+            @Override
+            public int compare(Restaurant lhs, Restaurant rhs) {
+                return Double.compare(distances.get(lhs), distances.get(rhs));
+            }
+        });
+        Instrumentation.stopTimer("findRestaurantsWithin");
+        return restaurants;
+    }
+
+    /**
+     * Full-text search on restaurant names, ranked by number of matching terms (then newest first)
+     * Each search term is matched as a prefix and all terms must match; FTS operators are not passed through
+     *
+     * @param terms  Search text as entered by the user
+     * @param limit  Maximum number of results to return
+     * @param offset Number of results to skip (for paging)
+     * @return ArrayList of SearchHits: the Restaurant plus a snippet with matches in <b>...</b>
+     */
+    public List<SearchHit<Restaurant>> search(String terms, int limit, int offset) {
+        return search(GaspSQLiteHelper.RESTAURANTS_SEARCH_TABLE, terms, limit, offset);
+    }
 }
@@ -0,0 +1,77 @@
+package com.appdynamics.demo.gasp.adapter;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.view.View;
+import android.widget.TextView;
+
+import com.appdynamics.demo.gasp.R;
+import com.appdynamics.demo.gasp.model.ReviewDetail;
+
+/**
+ * Copyright (c) 2013 Mark Prichard
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * CursorAdapter subclass for use with ListActivity (ReviewListActivity)
+ * See gasp_review_list.xml for layout views
+ */
+public class ReviewCursorAdapter extends GaspCursorAdapter<ReviewDetail, ReviewCursorAdapter.ViewHolder> {
+    private final ReviewDataAdapter mReviewData;
+
+    static class ViewHolder {
+        TextView url;
+        TextView restaurant;
+        TextView user;
+        TextView star;
+        TextView comment;
+    }
+
+    /**
+     * Default constructor
+     * @param context The Activity context
+     * @param reviewData The ReviewDataAdapter used to read Cursor rows (see ReviewDataAdapter.getDetailCursorDesc())
+     */
+    public ReviewCursorAdapter(Context context, ReviewDataAdapter reviewData) {
+        super(context, R.layout.gasp_review_list);
+        this.mReviewData = reviewData;
+    }
+
+    @Override
+    protected ReviewDetail fromCursor(Cursor cursor) {
+        return mReviewData.detailFromCursor(cursor);
+    }
+
+    @Override
+    protected ViewHolder newHolder(View view) {
+        ViewHolder holder = new ViewHolder();
+        holder.url = (TextView) view.findViewById(R.id.review_url);
+        holder.restaurant = (TextView) view.findViewById(R.id.review_restaurant);
+        holder.user = (TextView) view.findViewById(R.id.review_user);
+        holder.star = (TextView) view.findViewById(R.id.review_star);
+        holder.comment = (TextView) view.findViewById(R.id.review_comment);
+        return holder;
+    }
+
+    @Override
+    protected void bindHolder(ViewHolder holder, ReviewDetail review) {
+        holder.url.setText("Url: " + review.getUrl());
+        holder.restaurant.setText("Restaurant: " + (review.getRestaurantName() != null
+                ? review.getRestaurantName() : review.getRestaurant()));
+        holder.user.setText("User: " + (review.getUserName() != null
+                ? review.getUserName() : review.getUser()));
+        holder.star.setText("Star: " + review.getStar());
+        holder.comment.setText("Comment: " + review.getComment());
+    }
+}
@@ -19,10 +19,19 @@ package com.appdynamics.demo.gasp.adapter;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+import android.util.Log;
 
+import com.appdynamics.demo.gasp.model.RestaurantRating;
 import com.appdynamics.demo.gasp.model.Review;
+import com.appdynamics.demo.gasp.model.ReviewDetail;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Adapter class mapping the Gasp database to com.appdynamics.demo.gasp.model.Review
@@ -39,9 +48,46 @@ public class ReviewDataAdapter extends GaspDataAdapter<Review> {
             GaspSQLiteHelper.REVIEWS_COLUMN_STAR
     };
 
+    private static final String[] ratingColumns = {
+            GaspSQLiteHelper.RATINGS_COLUMN_RESTAURANT_ID,
+            GaspSQLiteHelper.RATINGS_COLUMN_REVIEW_COUNT,
+            GaspSQLiteHelper.RATINGS_COLUMN_STAR_TOTAL
+    };
+
+    // Reviews joined to restaurant and user names: review columns first, in allColumns order
+    private static final String DETAIL_COLUMN_RESTAURANT_NAME = "restaurant_name";
+    private static final String DETAIL_COLUMN_USER_NAME = "user_name";
+    private static final String DETAIL_QUERY = "SELECT " +
+            "r." + GaspSQLiteHelper.REVIEWS_COLUMN_ID + ", " +
+            "r." + GaspSQLiteHelper.REVIEWS_COLUMN_RESTAURANT_ID + ", " +
+            "r." + GaspSQLiteHelper.REVIEWS_COLUMN_USER_ID + ", " +
+            "r." + GaspSQLiteHelper.REVIEWS_COLUMN_COMMENT + ", " +
+            "r." + GaspSQLiteHelper.REVIEWS_COLUMN_STAR + ", " +
+            "rs." + GaspSQLiteHelper.RESTAURANTS_COLUMN_NAME + " AS " + DETAIL_COLUMN_RESTAURANT_NAME + ", " +
+            "u." + GaspSQLiteHelper.USERS_COLUMN_NAME + " AS " + DETAIL_COLUMN_USER_NAME + ", " +
+            "r." + GaspSQLiteHelper.REVIEWS_COLUMN_ID + " AS " + BaseColumns._ID +
+            " FROM " + GaspSQLiteHelper.REVIEWS_TABLE + " r" +
+            " LEFT JOIN " + GaspSQLiteHelper.RESTAURANTS_TABLE + " rs ON rs." +
+            GaspSQLiteHelper.RESTAURANTS_COLUMN_ID + " = r." + GaspSQLiteHelper.REVIEWS_COLUMN_RESTAURANT_ID +
+            " LEFT JOIN " + GaspSQLiteHelper.USERS_TABLE + " u ON u." +
+            GaspSQLiteHelper.USERS_COLUMN_ID + " = r." + GaspSQLiteHelper.REVIEWS_COLUMN_USER_ID;
+
+    // Keep IN (...) lists well under SQLITE_MAX_VARIABLE_NUMBER (999)
+    private static final int RESTAURANT_ID_CHUNK_SIZE = 200;
+
     private static final String idColumnName = GaspSQLiteHelper.REVIEWS_COLUMN_ID;
     private static final String tableName = GaspSQLiteHelper.REVIEWS_TABLE;
 
+    private final CursorColumns detailColumns = new CursorColumns(new String[]{
+            GaspSQLiteHelper.REVIEWS_COLUMN_ID,
+            GaspSQLiteHelper.REVIEWS_COLUMN_RESTAURANT_ID,
+            GaspSQLiteHelper.REVIEWS_COLUMN_USER_ID,
+            GaspSQLiteHelper.REVIEWS_COLUMN_COMMENT,
+            GaspSQLiteHelper.REVIEWS_COLUMN_STAR,
+            DETAIL_COLUMN_RESTAURANT_NAME,
+            DETAIL_COLUMN_USER_NAME
+    });
+
     public ReviewDataAdapter(Context context) {
         super(context);
     }
@@ -71,14 +117,93 @@ public class ReviewDataAdapter extends GaspDataAdapter<Review> {
     }
 
     @Override
-    protected Review fromCursor(Cursor cursor) {
-        Review Review = new Review();
-        Review.setId(cursor.getInt(0));
-        Review.setRestaurant_id(cursor.getInt(1));
-        Review.setUser_id(cursor.getInt(2));
-        Review.setComment(cursor.getString(3));
-        Review.setStar(cursor.getInt(4));
-        return Review;
+    protected Review newElement() {
+        return new Review();
+    }
+
+    @Override
+    protected void readRow(Cursor cursor, int[] columns, Review review) {
+        review.setId(cursor.getInt(columns[0]));
+        review.setRestaurant_id(cursor.getInt(columns[1]));
+        review.setUser_id(cursor.getInt(columns[2]));
+        review.setComment(cursor.getString(columns[3]));
+        review.setStar(cursor.getInt(columns[4]));
+    }
+
+    /**
+     * Convert a row from a DETAIL_QUERY Cursor
+     *
+     * @param cursor Cursor positioned on a joined review row
+     * @return ReviewDetail, with null names for restaurants or users not yet synced
+     */
+    ReviewDetail detailFromCursor(Cursor cursor) {
+        ReviewDetail review = new ReviewDetail();
+        readDetailRow(cursor, detailColumns.indexesFor(cursor), review);
+        return review;
+    }
+
+    // Review columns come first in detailColumns, so readRow() handles them
+    private void readDetailRow(Cursor cursor, int[] columns, ReviewDetail review) {
+        readRow(cursor, columns, review);
+        review.setRestaurantName(cursor.getString(columns[5]));
+        review.setUserName(cursor.getString(columns[6]));
+    }
+
+    private List<ReviewDetail> detailsFromCursor(Cursor cursor) {
+        try {
+            List<ReviewDetail> reviews = new ArrayList<ReviewDetail>(cursor.getCount());
+            int[] columns = detailColumns.indexesFor(cursor);
+            while (cursor.moveToNext()) {
+                ReviewDetail review = new ReviewDetail();
+                readDetailRow(cursor, columns, review);
+                reviews.add(review);
+            }
+            return reviews;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Get a Cursor over all reviews with restaurant and user names, in descending order
+     * Includes an "_id" column for CursorAdapter: convert rows with detailFromCursor()
+     * The caller owns the Cursor and must close it
+     *
+     * @return Cursor positioned before the first row
+     */
+    public Cursor getDetailCursorDesc() {
+        return database.rawQuery(DETAIL_QUERY
+                + " ORDER BY r." + GaspSQLiteHelper.REVIEWS_COLUMN_ID + " DESC", null);
+    }
+
+    /**
+     * Get a page of reviews with restaurant and user names, in descending id order (keyset pagination)
+     *
+     * @param beforeId Return reviews with id below this value: use FIRST_PAGE_DESC for the first page
+     * @param limit    Maximum number of reviews to return
+     * @return ArrayList of ReviewDetails
+     */
+    public List<ReviewDetail> getDetailPageDesc(long beforeId, int limit) {
+        Cursor cursor = database.rawQuery(DETAIL_QUERY
+                + " WHERE r." + GaspSQLiteHelper.REVIEWS_COLUMN_ID + " < ?"
+                + " ORDER BY r." + GaspSQLiteHelper.REVIEWS_COLUMN_ID + " DESC LIMIT " + limit,
+                new String[]{String.valueOf(beforeId)});
+        return detailsFromCursor(cursor);
+    }
+
+    /**
+     * Find last N reviews with restaurant and user names for a given restaurant id (in DESC order)
+     *
+     * @param id Restaurant id
+     * @param n  Number of reviews to return
+     * @return ArrayList of ReviewDetails
+     */
+    public List<ReviewDetail> getLastNDetailsByRestaurant(int id, int n) {
+        Cursor cursor = database.rawQuery(DETAIL_QUERY
+                + " WHERE r." + GaspSQLiteHelper.REVIEWS_COLUMN_RESTAURANT_ID + " = ?"
+                + " ORDER BY r." + GaspSQLiteHelper.REVIEWS_COLUMN_ID + " DESC LIMIT " + n,
+                new String[]{String.valueOf(id)});
+        return detailsFromCursor(cursor);
     }
 
     /**
@@ -112,4 +237,169 @@ public class ReviewDataAdapter extends GaspDataAdapter<Review> {
                 getIdColumnName() + " DESC", String.valueOf(n));
         return listFromCursor(cursor);
     }
+
+    /**
+     * Get the review count and star total for a restaurant (a single primary key lookup)
+     *
+     * @param id Restaurant id
+     * @return RestaurantRating, or null if the restaurant has no reviews
+     */
+    public RestaurantRating getRating(int id) {
+        RestaurantRating rating = null;
+        Cursor cursor = database.query(GaspSQLiteHelper.RATINGS_TABLE, ratingColumns,
+                GaspSQLiteHelper.RATINGS_COLUMN_RESTAURANT_ID + " = ?",
+                new String[]{String.valueOf(id)}, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                rating = ratingFromCursor(cursor);
+            }
+        } finally {
+            cursor.close();
+        }
+        return rating != null && rating.getReviewCount() > 0 ? rating : null;
+    }
+
+    /**
+     * Get review counts and star totals for a set of restaurants, using chunked IN (...) queries
+     *
+     * @param ids Restaurant ids
+     * @return Map of restaurant id to RestaurantRating: restaurants with no reviews are not included
+     */
+    public Map<Integer, RestaurantRating> getRatings(Collection<Integer> ids) {
+        Map<Integer, RestaurantRating> ratings = new HashMap<Integer, RestaurantRating>();
+        List<Integer> idList = new ArrayList<Integer>(ids);
+
+        for (int start = 0; start < idList.size(); start += RESTAURANT_ID_CHUNK_SIZE) {
+            List<Integer> chunk = idList.subList(start, Math.min(start + RESTAURANT_ID_CHUNK_SIZE, idList.size()));
+
+            StringBuilder selection = new StringBuilder(GaspSQLiteHelper.RATINGS_COLUMN_RESTAURANT_ID)
+                    .append(" IN (");
+            String[] selectionArgs = new String[chunk.size()];
+            for (int i = 0; i < chunk.size(); i++) {
+                selection.append(i == 0 ? "?" : ", ?");
+                selectionArgs[i] = String.valueOf(chunk.get(i));
+            }
+            selection.append(") AND ").append(GaspSQLiteHelper.RATINGS_COLUMN_REVIEW_COUNT).append(" > 0");
+
+            Cursor cursor = database.query(GaspSQLiteHelper.RATINGS_TABLE, ratingColumns,
+                    selection.toString(), selectionArgs, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    RestaurantRating rating = ratingFromCursor(cursor);
+                    ratings.put(rating.getRestaurant_id(), rating);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return ratings;
+    }
+
+    private static RestaurantRating ratingFromCursor(Cursor cursor) {
+        RestaurantRating rating = new RestaurantRating();
+        rating.setRestaurant_id(cursor.getInt(0));
+        rating.setReviewCount(cursor.getInt(1));
+        rating.setStarTotal(cursor.getInt(2));
+        return rating;
+    }
+
+    /**
+     * Full-text search on review comments, ranked by number of matching terms (then newest first)
+     * Each search term is matched as a prefix and all terms must match; FTS operators are not passed through
+     *
+     * @param terms  Search text as entered by the user
+     * @param limit  Maximum number of results to return
+     * @param offset Number of results to skip (for paging)
+     * @return ArrayList of SearchHits: the Review plus a snippet with matches in <b>...</b>
+     */
+    public List<SearchHit<Review>> search(String terms, int limit, int offset) {
+        return search(GaspSQLiteHelper.REVIEWS_SEARCH_TABLE, terms, limit, offset);
+    }
+
+    /**
+     * Retention: delete all but the newest N reviews for each restaurant
+     * Restaurant ratings are unchanged: evicted reviews still count towards them
+     *
+     * @param keepPerRestaurant Number of reviews to keep for each restaurant
+     * @return Number of reviews deleted
+     */
+    public int evictAllButNewest(int keepPerRestaurant) {
+        List<String[]> restaurantArgs = new ArrayList<String[]>();
+        Cursor cursor = database.query(tableName, new String[]{GaspSQLiteHelper.REVIEWS_COLUMN_RESTAURANT_ID},
+                null, null, GaspSQLiteHelper.REVIEWS_COLUMN_RESTAURANT_ID, "count(*) > " + keepPerRestaurant, null);
+        try {
+            while (cursor.moveToNext()) {
+                String restaurantId = cursor.getString(0);
+                restaurantArgs.add(new String[]{restaurantId, restaurantId});
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // Delete from the (N + 1)th newest review down, using the restaurant_id index
+        return evict(GaspSQLiteHelper.REVIEWS_COLUMN_RESTAURANT_ID + " = ? AND " + idColumnName + " <= (" +
+                "SELECT " + idColumnName + " FROM " + tableName +
+                " WHERE " + GaspSQLiteHelper.REVIEWS_COLUMN_RESTAURANT_ID + " = ?" +
+                " ORDER BY " + idColumnName + " DESC LIMIT 1 OFFSET " + keepPerRestaurant + ")",
+                restaurantArgs);
+    }
+
+    /**
+     * Retention: delete reviews below an id watermark
+     * Every matching review is deleted, including the newest: syncs resume from the last id saved in
+     * sync_state (see SyncState), not from the table, so evicted reviews are not fetched again
+     * Restaurant ratings are unchanged: evicted reviews still count towards them
+     *
+     * @param watermarkId Reviews with ids below this value are deleted
+     * @return Number of reviews deleted
+     */
+    public int evictOlderThan(long watermarkId) {
+        List<String[]> args = new ArrayList<String[]>();
+        args.add(new String[]{String.valueOf(watermarkId)});
+        return evict(idColumnName + " < ?", args);
+    }
+
+    /**
+     * Run a retention delete once per set of arguments, in a single transaction
+     * The review_retention maintenance row disables the ratings delete trigger for the transaction,
+     * and raises each restaurant's highest evicted id, so the ratings triggers ignore evicted reviews that are re-synced
+     */
+    private int evict(String whereClause, List<String[]> argSets) {
+        if (argSets.isEmpty()) {
+            return 0;
+        }
+
+        ContentValues job = new ContentValues();
+        job.put(GaspSQLiteHelper.MAINTENANCE_COLUMN_NAME, GaspSQLiteHelper.MAINTENANCE_JOB_REVIEW_RETENTION);
+        String jobSelection = GaspSQLiteHelper.MAINTENANCE_COLUMN_NAME + " = ?";
+        String[] jobArgs = {GaspSQLiteHelper.MAINTENANCE_JOB_REVIEW_RETENTION};
+
+        // Before, so lookups during the delete reload; and after commit, in case one reloaded the rows meanwhile
+        final IdIndex index = IdIndex.forTable(tableName);
+        index.invalidate();
+
+        int deleted = 0;
+        boolean successful = false;
+        beginTransaction();
+        try {
+            database.insertWithOnConflict(GaspSQLiteHelper.MAINTENANCE_TABLE, null, job,
+                    SQLiteDatabase.CONFLICT_IGNORE);
+            for (String[] args : argSets) {
+                deleted += database.delete(tableName, whereClause, args);
+            }
+            database.delete(GaspSQLiteHelper.MAINTENANCE_TABLE, jobSelection, jobArgs);
+            runAfterCommit(new Runnable() {
+                @Override
+                public void run() {
+                    index.invalidate();
+                }
+            });
+            successful = true;
+        } finally {
+            endTransaction(successful);
+        }
+
+        Log.d(TAG, "Evicted " + deleted + " reviews");
+        return deleted;
+    }
 }
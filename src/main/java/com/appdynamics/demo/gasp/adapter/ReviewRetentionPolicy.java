@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.adapter;
+
+/**
+ * Retention policy for locally stored reviews: see GaspDatabaseMaintenance.applyRetention()
+ * Either limit may be NO_LIMIT; restaurant ratings always include evicted reviews
+ */
+public class ReviewRetentionPolicy {
+    public static final int NO_LIMIT = 0;
+
+    private final int keepPerRestaurant;
+    private final long minReviewId;
+
+    /**
+     * @param keepPerRestaurant Keep only the newest N reviews for each restaurant (or NO_LIMIT)
+     * @param minReviewId       Drop reviews with ids below this watermark (or NO_LIMIT)
+     */
+    public ReviewRetentionPolicy(int keepPerRestaurant, long minReviewId) {
+        this.keepPerRestaurant = keepPerRestaurant;
+        this.minReviewId = minReviewId;
+    }
+
+    public int getKeepPerRestaurant() {
+        return keepPerRestaurant;
+    }
+
+    public long getMinReviewId() {
+        return minReviewId;
+    }
+
+    @Override
+    public String toString() {
+        return "Keep per restaurant: " + keepPerRestaurant + ", Min review id: " + minReviewId;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.adapter;
+
+import com.appdynamics.demo.gasp.model.GaspDataObject;
+
+/**
+ * Result of a GaspDataAdapter full-text search: the matching object plus a snippet of the matched text
+ *
+ * @param <T> The GaspDataObject type for the Adapter
+ */
+public class SearchHit<T extends GaspDataObject> {
+    private final T item;
+    private final String snippet;
+
+    SearchHit(T item, String snippet) {
+        this.item = item;
+        this.snippet = snippet;
+    }
+
+    public T getItem() {
+        return item;
+    }
+
+    /**
+     * @return Matched text, with the matching terms marked up as <b>...</b>
+     */
+    public String getSnippet() {
+        return snippet;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchHit: " + item.getId() + ", " + snippet;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.adapter;
+
+/**
+ * Sync progress for one entity (table), stored in the sync_state table
+ * lastId is the highest id for which every lower id has been synced: rows inserted
+ * out of order (e.g. by GCM updates) do not advance it
+ */
+public class SyncState {
+    private final String entity;
+    long lastId;
+    long lastSyncTime;
+    String etag;
+    long recordCount;
+
+    SyncState(String entity) {
+        this.entity = entity;
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    /**
+     * @return Last fully synced id: the next sync starts after this id
+     */
+    public long getLastId() {
+        return lastId;
+    }
+
+    /**
+     * @return Time of the last successful sync (System.currentTimeMillis()), or 0 if never synced
+     */
+    public long getLastSyncTime() {
+        return lastSyncTime;
+    }
+
+    /**
+     * @return Server ETag from the last successful sync, or null
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    /**
+     * @return Number of rows loaded by sync
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncState: " + entity + ", Last id: " + lastId + ", Last sync: " + lastSyncTime
+                + ", ETag: " + etag + ", Records: " + recordCount;
+    }
+}
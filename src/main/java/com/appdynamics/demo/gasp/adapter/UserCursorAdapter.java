@@ -0,0 +1,67 @@
+package com.appdynamics.demo.gasp.adapter;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.view.View;
+import android.widget.TextView;
+
+import com.appdynamics.demo.gasp.R;
+import com.appdynamics.demo.gasp.model.User;
+
+/**
+ * Copyright (c) 2013 Mark Prichard
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * CursorAdapter subclass for use with ListActivity (UserListActivity)
+ * See gasp_user_list.xml for layout views
+ */
+public class UserCursorAdapter extends GaspCursorAdapter<User, UserCursorAdapter.ViewHolder> {
+
+    private final UserDataAdapter mUserData;
+
+    static class ViewHolder {
+        TextView url;
+        TextView name;
+    }
+
+    /**
+     * Default constructor
+     * @param context The Activity context
+     * @param userData The UserDataAdapter used to read Cursor rows
+     */
+    public UserCursorAdapter(Context context, UserDataAdapter userData) {
+        super(context, R.layout.gasp_user_list);
+        this.mUserData = userData;
+    }
+
+    @Override
+    protected User fromCursor(Cursor cursor) {
+        return mUserData.fromCursor(cursor);
+    }
+
+    @Override
+    protected ViewHolder newHolder(View view) {
+        ViewHolder holder = new ViewHolder();
+        holder.url = (TextView) view.findViewById(R.id.user_url);
+        holder.name = (TextView) view.findViewById(R.id.user_name);
+        return holder;
+    }
+
+    @Override
+    protected void bindHolder(ViewHolder holder, User user) {
+        holder.url.setText("Url: " + user.getUrl());
+        holder.name.setText("Name: " + user.getName());
+    }
+}
@@ -57,11 +57,14 @@ public class UserDataAdapter extends GaspDataAdapter<User> {
     }
 
     @Override
-    protected User fromCursor(Cursor cursor) {
-        User user = new User();
-        user.setId(cursor.getInt(0));
-        user.setName(cursor.getString(1));
-        return user;
+    protected User newElement() {
+        return new User();
+    }
+
+    @Override
+    protected void readRow(Cursor cursor, int[] columns, User user) {
+        user.setId(cursor.getInt(columns[0]));
+        user.setName(cursor.getString(columns[1]));
     }
 
     @Override
@@ -10,9 +10,12 @@ import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
 
-import com.appdynamics.demo.gasp.adapter.RestaurantDataAdapter;
+import com.appdynamics.demo.gasp.adapter.AsyncGaspDatabase;
+import com.appdynamics.demo.gasp.adapter.GaspDataAdapter;
+import com.appdynamics.demo.gasp.adapter.PagingScrollListener;
 import com.appdynamics.demo.gasp.model.Restaurant;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -34,29 +37,70 @@ import java.util.List;
 public class RestaurantsFragment extends ListFragment {
     private static final String TAG = RestaurantsFragment.class.getName();
 
+    private static final int PAGE_SIZE = 50;
+
     private List<Restaurant> mRestaurants;
+    private ArrayAdapter<Restaurant> mAdapter;
+    private AsyncGaspDatabase mAsyncDatabase;
+    private final PagingScrollListener mPager = new PagingScrollListener() {
+        @Override
+        protected void loadNextPage() {
+            RestaurantsFragment.this.loadNextPage();
+        }
+    };
 
     public RestaurantsFragment() {
     }
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        RestaurantDataAdapter mRestaurantAdapter = new RestaurantDataAdapter(inflater.getContext());
-        mRestaurantAdapter.open();
-
-        // Get all restaurants in descending order
-        mRestaurants = mRestaurantAdapter.getAllDesc();
-        mRestaurantAdapter.close();
+        mAsyncDatabase = new AsyncGaspDatabase(inflater.getContext());
 
-        ArrayAdapter<Restaurant> adapter =
-                new ArrayAdapter<Restaurant>(inflater.getContext(),
-                                             android.R.layout.simple_list_item_1,
-                                             mRestaurants);
-        setListAdapter(adapter);
+        // Get first page of restaurants in descending order: more pages are loaded on scroll
+        mRestaurants = new ArrayList<Restaurant>();
+        mAdapter = new ArrayAdapter<Restaurant>(inflater.getContext(),
+                                                android.R.layout.simple_list_item_1,
+                                                mRestaurants);
+        mPager.reset();
+        mPager.requestNextPage();
+        setListAdapter(mAdapter);
 
         return super.onCreateView(inflater, container, savedInstanceState);
     }
 
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        getListView().setOnScrollListener(mPager);
+    }
+
+    @Override
+    public void onDestroyView() {
+        mAsyncDatabase.cancelAll();
+        super.onDestroyView();
+    }
+
+    /**
+     * Load the next page of restaurants in the background and append it to the list
+     */
+    private void loadNextPage() {
+        long beforeId = mRestaurants.isEmpty()
+                ? GaspDataAdapter.FIRST_PAGE_DESC
+                : mRestaurants.get(mRestaurants.size() - 1).getId();
+        mAsyncDatabase.getRestaurantsPageDesc(beforeId, PAGE_SIZE, new AsyncGaspDatabase.Callback<List<Restaurant>>() {
+            @Override
+            public void onResult(List<Restaurant> page) {
+                mAdapter.addAll(page);
+                mPager.onPageLoaded(page.size() == PAGE_SIZE);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                mPager.onPageFailed();
+            }
+        });
+    }
+
     @Override
     public void onListItemClick(ListView l, View v, int position, long id) {
         super.onListItemClick(l, v, position, id);
@@ -30,7 +30,7 @@ public class ReviewDetailsFragment extends ListFragment {
     public ReviewDetailsFragment() {
     }
 
-    public void showReviewDetails(List<Review> reviews) {
+    public void showReviewDetails(List<? extends Review> reviews) {
         // Use a simple TextView layout for ArrayAdapter constructor
         ArrayAdapter<String> mReviewAdapter =
                 new ArrayAdapter<String>(getActivity(), R.layout.gasp_generic_textview, new ArrayList<String>());
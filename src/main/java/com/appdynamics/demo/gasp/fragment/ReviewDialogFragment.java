@@ -11,6 +11,7 @@ import android.widget.TextView;
 
 import com.appdynamics.demo.gasp.R;
 import com.appdynamics.demo.gasp.model.Review;
+import com.appdynamics.demo.gasp.model.ReviewDetail;
 import com.appdynamics.demo.gasp.utils.Preferences;
 
 import java.net.MalformedURLException;
@@ -66,8 +67,17 @@ public class ReviewDialogFragment extends DialogFragment {
             Log.d(TAG, "User: " + userUrl);
 
             setTextView(view, R.id.review_dialog_url, "Gasp! Review: " + reviewUrl.toString());
-            setTextView(view, R.id.review_dialog_restaurant, "Gasp! Restaurant: " + restaurantUrl.toString());
-            setTextView(view, R.id.review_dialog_user, "Gasp! User: " + userUrl.toString());
+            if (review instanceof ReviewDetail && ((ReviewDetail) review).getRestaurantName() != null) {
+                setTextView(view, R.id.review_dialog_restaurant,
+                        "Gasp! Restaurant: " + ((ReviewDetail) review).getRestaurantName());
+            } else {
+                setTextView(view, R.id.review_dialog_restaurant, "Gasp! Restaurant: " + restaurantUrl.toString());
+            }
+            if (review instanceof ReviewDetail && ((ReviewDetail) review).getUserName() != null) {
+                setTextView(view, R.id.review_dialog_user, "Gasp! User: " + ((ReviewDetail) review).getUserName());
+            } else {
+                setTextView(view, R.id.review_dialog_user, "Gasp! User: " + userUrl.toString());
+            }
             setTextView(view, R.id.review_dialog_comment, "Comment: " + review.getComment());
             setTextView(view, R.id.review_dialog_star, "Stars: " + String.valueOf(review.getStar()));
         }
@@ -11,10 +11,13 @@ import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
 
-import com.appdynamics.demo.gasp.adapter.ReviewDataAdapter;
-import com.appdynamics.demo.gasp.model.Review;
+import com.appdynamics.demo.gasp.adapter.AsyncGaspDatabase;
+import com.appdynamics.demo.gasp.adapter.GaspDataAdapter;
+import com.appdynamics.demo.gasp.adapter.PagingScrollListener;
+import com.appdynamics.demo.gasp.model.ReviewDetail;
 import com.appdynamics.demo.gasp.utils.Preferences;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -36,7 +39,17 @@ import java.util.List;
 public class ReviewsFragment extends ListFragment {
     private static final String TAG = ReviewsFragment.class.getName();
 
-    private List<Review> mReviews;
+    private static final int PAGE_SIZE = 50;
+
+    private List<ReviewDetail> mReviews;
+    private ArrayAdapter<ReviewDetail> mAdapter;
+    private AsyncGaspDatabase mAsyncDatabase;
+    private final PagingScrollListener mPager = new PagingScrollListener() {
+        @Override
+        protected void loadNextPage() {
+            ReviewsFragment.this.loadNextPage();
+        }
+    };
 
     public ReviewsFragment() {
     }
@@ -46,21 +59,53 @@ public class ReviewsFragment extends ListFragment {
         Context mContext = inflater.getContext();
         String mBaseUrl = Preferences.getGaspServerUrl().replaceAll("/$", "");
 
-        ReviewDataAdapter mReviewAdapter = new ReviewDataAdapter(inflater.getContext());
-        mReviewAdapter.open();
+        mAsyncDatabase = new AsyncGaspDatabase(inflater.getContext());
 
-        // Get all reviews in descending order
-        mReviews = mReviewAdapter.getAllDesc();
-        ArrayAdapter<Review> adapter =
-                new ArrayAdapter<Review>(inflater.getContext(),
-                                         android.R.layout.simple_list_item_1,
-                                         mReviews);
-        mReviewAdapter.close();
+        // Get first page of reviews in descending order: more pages are loaded on scroll
+        mReviews = new ArrayList<ReviewDetail>();
+        mAdapter = new ArrayAdapter<ReviewDetail>(inflater.getContext(),
+                                            android.R.layout.simple_list_item_1,
+                                            mReviews);
+        mPager.reset();
+        mPager.requestNextPage();
 
-        setListAdapter(adapter);
+        setListAdapter(mAdapter);
         return super.onCreateView(inflater, container, savedInstanceState);
     }
 
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        getListView().setOnScrollListener(mPager);
+    }
+
+    @Override
+    public void onDestroyView() {
+        mAsyncDatabase.cancelAll();
+        super.onDestroyView();
+    }
+
+    /**
+     * Load the next page of reviews (with restaurant and user names) in the background and append it to the list
+     */
+    private void loadNextPage() {
+        long beforeId = mReviews.isEmpty()
+                ? GaspDataAdapter.FIRST_PAGE_DESC
+                : mReviews.get(mReviews.size() - 1).getId();
+        mAsyncDatabase.getReviewDetailsPageDesc(beforeId, PAGE_SIZE, new AsyncGaspDatabase.Callback<List<ReviewDetail>>() {
+            @Override
+            public void onResult(List<ReviewDetail> page) {
+                mAdapter.addAll(page);
+                mPager.onPageLoaded(page.size() == PAGE_SIZE);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                mPager.onPageFailed();
+            }
+        });
+    }
+
     @Override
     public void onListItemClick(ListView l, View v, int position, long id) {
         super.onListItemClick(l, v, position, id);
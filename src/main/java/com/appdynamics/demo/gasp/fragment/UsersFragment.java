@@ -7,9 +7,12 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
 
-import com.appdynamics.demo.gasp.adapter.UserDataAdapter;
+import com.appdynamics.demo.gasp.adapter.AsyncGaspDatabase;
+import com.appdynamics.demo.gasp.adapter.GaspDataAdapter;
+import com.appdynamics.demo.gasp.adapter.PagingScrollListener;
 import com.appdynamics.demo.gasp.model.User;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -29,24 +32,67 @@ import java.util.List;
  */
 
 public class UsersFragment extends ListFragment {
+    private static final int PAGE_SIZE = 50;
+
+    private List<User> mUsers;
+    private ArrayAdapter<User> mAdapter;
+    private AsyncGaspDatabase mAsyncDatabase;
+    private final PagingScrollListener mPager = new PagingScrollListener() {
+        @Override
+        protected void loadNextPage() {
+            UsersFragment.this.loadNextPage();
+        }
+    };
 
     public UsersFragment() {
     }
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        UserDataAdapter userDataAdapter = new UserDataAdapter(inflater.getContext());
-        userDataAdapter.open();
-
-        // Get all users in descending order
-        List<User> users = userDataAdapter.getAllDesc();
-        userDataAdapter.close();
-        ArrayAdapter<User> adapter =
-                new ArrayAdapter<User>(inflater.getContext(),
-                                       android.R.layout.simple_list_item_1,
-                                       users);
-        setListAdapter(adapter);
+        mAsyncDatabase = new AsyncGaspDatabase(inflater.getContext());
+
+        // Get first page of users in descending order: more pages are loaded on scroll
+        mUsers = new ArrayList<User>();
+        mAdapter = new ArrayAdapter<User>(inflater.getContext(),
+                                          android.R.layout.simple_list_item_1,
+                                          mUsers);
+        mPager.reset();
+        mPager.requestNextPage();
+        setListAdapter(mAdapter);
 
         return super.onCreateView(inflater, container, savedInstanceState);
     }
+
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        getListView().setOnScrollListener(mPager);
+    }
+
+    @Override
+    public void onDestroyView() {
+        mAsyncDatabase.cancelAll();
+        super.onDestroyView();
+    }
+
+    /**
+     * Load the next page of users in the background and append it to the list
+     */
+    private void loadNextPage() {
+        long beforeId = mUsers.isEmpty()
+                ? GaspDataAdapter.FIRST_PAGE_DESC
+                : mUsers.get(mUsers.size() - 1).getId();
+        mAsyncDatabase.getUsersPageDesc(beforeId, PAGE_SIZE, new AsyncGaspDatabase.Callback<List<User>>() {
+            @Override
+            public void onResult(List<User> page) {
+                mAdapter.addAll(page);
+                mPager.onPageLoaded(page.size() == PAGE_SIZE);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                mPager.onPageFailed();
+            }
+        });
+    }
 }
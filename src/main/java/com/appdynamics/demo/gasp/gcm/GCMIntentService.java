@@ -28,9 +28,9 @@ import android.util.Log;
 
 import com.appdynamics.demo.gasp.R;
 import com.appdynamics.demo.gasp.activity.LocationsActivity;
-import com.appdynamics.demo.gasp.service.RestaurantUpdateService;
-import com.appdynamics.demo.gasp.service.ReviewUpdateService;
-import com.appdynamics.demo.gasp.service.UserUpdateService;
+import com.appdynamics.demo.gasp.service.SyncEntity;
+import com.appdynamics.demo.gasp.service.SyncScheduler;
+import com.appdynamics.demo.gasp.service.SyncService;
 import com.appdynamics.eumagent.runtime.CallTracker;
 import com.appdynamics.eumagent.runtime.Instrumentation;
 import com.google.android.gms.gcm.GoogleCloudMessaging;
@@ -65,6 +65,8 @@ public class GCMIntentService extends IntentService {
                     Log.i(TAG, "Send error: " + extras.toString());
                 } else if (GoogleCloudMessaging.MESSAGE_TYPE_DELETED.equals(messageType)) {
                     Log.i(TAG, "Deleted messages on server: " + extras.toString());
+                    // Updates were lost: catch up with a full sync
+                    SyncScheduler.getInstance(this).requestSync(SyncScheduler.TRIGGER_GCM);
                 } else if (GoogleCloudMessaging.MESSAGE_TYPE_MESSAGE.equals(messageType)) {
                     Log.i(TAG, "Received: " + extras.toString());
 
@@ -73,27 +75,26 @@ public class GCMIntentService extends IntentService {
                     String notificationMessage = "There's something new from Gasp!";
 
                     if (table != null) {
-                        if (table.matches("reviews")) {
-                            startService(new Intent(getApplicationContext(), ReviewUpdateService.class)
-                                    .putExtra(PARAM_ID, index));
-                        } else if (table.matches("restaurants")) {
-                            startService(new Intent(getApplicationContext(), RestaurantUpdateService.class)
-                                    .putExtra(PARAM_ID, index));
-                        } else if (table.matches("users")) {
-                            startService(new Intent(getApplicationContext(), UserUpdateService.class)
-                                    .putExtra(PARAM_ID, index));
+                        // Fetched by SyncService with any other ids that arrive within the batch window,
+                        // under a wake lock of its own
+                        SyncEntity<?> entity = SyncEntity.forName(table);
+                        if (entity != null) {
+                            GCMBroadcastReceiver.startWakefulService(this,
+                                    SyncService.newBatchedUpdateIntent(this, entity.getName(), index));
                         }
                         // Send notification message for message bar display etc
                         sendNotification(notificationMessage);
                     } else {
                         Log.e(TAG, "Error: table not specified");
                     }
-                    // Release the wake lock provided by the WakefulBroadcastReceiver.
-                    GCMBroadcastReceiver.completeWakefulIntent(intent);
                 }
             }
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            // Release the wake lock provided by the WakefulBroadcastReceiver, for every message type
+            // and also when the message cannot be parsed
+            GCMBroadcastReceiver.completeWakefulIntent(intent);
         }
         //AppDynamics
         com.appdynamics.eumagent.runtime.Instrumentation.endCall(tracker);
@@ -3,6 +3,7 @@ package com.appdynamics.demo.gasp.location;
 import android.util.Log;
 
 import com.appdynamics.demo.gasp.model.Query;
+import com.appdynamics.demo.gasp.utils.HttpCompression;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -113,8 +114,9 @@ class GooglePlacesClient {
             Log.d(TAG, "Request URL: " + url.toString());
 
             conn = (HttpURLConnection) url.openConnection();
+            HttpCompression.acceptGzip(conn);
 
-            InputStreamReader in = new InputStreamReader(conn.getInputStream());
+            InputStreamReader in = new InputStreamReader(HttpCompression.getInputStream(conn));
 
             int read;
             char[] buff = new char[1024];
@@ -147,6 +149,7 @@ class GooglePlacesClient {
             conn = (HttpURLConnection) url.openConnection();
             conn.setRequestMethod("POST");
             conn.setRequestProperty("Content-Type", "application/json");
+            HttpCompression.acceptGzip(conn);
             conn.setDoInput(true);
             conn.setDoOutput(true);
             conn.setRequestProperty("Content-Length", "" +
@@ -157,7 +160,7 @@ class GooglePlacesClient {
             wr.flush ();
             wr.close ();
 
-            InputStreamReader in = new InputStreamReader(conn.getInputStream());
+            InputStreamReader in = new InputStreamReader(HttpCompression.getInputStream(conn));
 
             int read;
             char[] buff = new char[1024];
@@ -23,6 +23,8 @@ public class Restaurant extends GaspDataObject implements Serializable {
     private String name;
     private String website;
     private String placesId;
+    private Double lat;
+    private Double lng;
     private String url;
 
     public int getId() {
@@ -58,6 +60,26 @@ public class Restaurant extends GaspDataObject implements Serializable {
         this.placesId = placesId;
     }
 
+    public Double getLat() {
+        return lat;
+    }
+
+    public void setLat(Double lat) {
+        this.lat = lat;
+    }
+
+    public Double getLng() {
+        return lng;
+    }
+
+    public void setLng(Double lng) {
+        this.lng = lng;
+    }
+
+    public boolean hasLocation() {
+        return lat != null && lng != null;
+    }
+
     public String getUrl() {
         return url;
     }
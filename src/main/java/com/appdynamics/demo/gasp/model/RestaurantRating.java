@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.model;
+
+public class RestaurantRating {
+    private int restaurant_id;
+    private int reviewCount;
+    private int starTotal;
+
+    public int getRestaurant_id() {
+        return restaurant_id;
+    }
+
+    public void setRestaurant_id(int restaurant_id) {
+        this.restaurant_id = restaurant_id;
+    }
+
+    public int getReviewCount() {
+        return reviewCount;
+    }
+
+    public void setReviewCount(int reviewCount) {
+        this.reviewCount = reviewCount;
+    }
+
+    public int getStarTotal() {
+        return starTotal;
+    }
+
+    public void setStarTotal(int starTotal) {
+        this.starTotal = starTotal;
+    }
+
+    public float getAverageStars() {
+        return reviewCount == 0 ? 0 : (float) starTotal / reviewCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1f Stars (%d reviews)", getAverageStars(), getReviewCount());
+    }
+}
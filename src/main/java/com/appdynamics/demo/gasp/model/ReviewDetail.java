@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.model;
+
+import java.io.Serializable;
+
+/**
+ * Read model for displaying a Review: the review plus restaurant and user names, from a single joined query
+ * Names are null if the restaurant or user has not been synced yet
+ */
+public class ReviewDetail extends Review implements Serializable {
+    private String restaurantName;
+    private String userName;
+
+    public String getRestaurantName() {
+        return restaurantName;
+    }
+
+    public void setRestaurantName(String restaurantName) {
+        this.restaurantName = restaurantName;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public void setUserName(String userName) {
+        this.userName = userName;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString()
+                + (userName != null ? " - " + userName : "")
+                + (restaurantName != null ? " @ " + restaurantName : "");
+    }
+}
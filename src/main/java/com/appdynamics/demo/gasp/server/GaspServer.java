@@ -2,8 +2,10 @@ package com.appdynamics.demo.gasp.server;
 
 import android.util.Log;
 
-import java.io.DataOutputStream;
+import com.appdynamics.demo.gasp.utils.HttpCompression;
+
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -35,6 +37,18 @@ class GaspServer {
      * @return URL of the newly-created resource
      */
     public static String newGaspEntity (String input, URL url) {
+        return newGaspEntity(input, url, false);
+    }
+
+    /**
+     * Adds a new Gasp entity via HTTP POST
+     *
+     * @param input JSON-formatted request body
+     * @param url Gasp server URL for HTTP POST
+     * @param gzip Send the request body with Content-Encoding: gzip (the server must support it)
+     * @return URL of the newly-created resource
+     */
+    public static String newGaspEntity (String input, URL url, boolean gzip) {
         HttpURLConnection conn = null;
         String location = "";
 
@@ -42,16 +56,23 @@ class GaspServer {
             Log.d(TAG, "Request URL: " + url.toString());
             Log.d(TAG, "Request Body: " + input);
 
+            byte[] body = input.getBytes("UTF-8");
+            if (gzip) {
+                body = HttpCompression.gzip(body);
+            }
+
             conn = (HttpURLConnection) url.openConnection();
             conn.setRequestMethod("POST");
             conn.setRequestProperty("Content-Type", "application/json");
+            if (gzip) {
+                conn.setRequestProperty(HttpCompression.HEADER_CONTENT_ENCODING, HttpCompression.ENCODING_GZIP);
+            }
             conn.setDoInput(true);
             conn.setDoOutput(true);
-            conn.setRequestProperty("Content-Length", "" +
-                    Integer.toString(input.getBytes().length));
+            conn.setFixedLengthStreamingMode(body.length);
 
-            DataOutputStream wr = new DataOutputStream(conn.getOutputStream ());
-            wr.writeBytes (input);
+            OutputStream wr = conn.getOutputStream();
+            wr.write(body);
             wr.flush ();
             wr.close ();
             if (conn.getHeaderField("Location") != null) {
@@ -18,33 +18,112 @@ package com.appdynamics.demo.gasp.service;
 
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.text.TextUtils;
 import android.util.Log;
 
+import com.appdynamics.demo.gasp.utils.HttpCompression;
+import com.google.gson.JsonIOException;
+
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.BasicResponseHandler;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Collection;
 import java.util.Random;
+import java.util.concurrent.Executor;
 
 class AsyncRESTClient {
     private static final String TAG = AsyncRESTClient.class.getName();
 
+    // Delta sync: ask the server for entities with ids above the local watermark only
+    static final String PARAM_AFTER = "after";
+    // Batched updates: ask the server for the entities with these (comma-separated) ids
+    static final String PARAM_IDS = "ids";
+
     private final Uri mBaseUri;
     private final IRESTListener mListener;
+    private final HttpValidators mValidators;
+    private final Executor mExecutor;
 
-    public AsyncRESTClient(Uri baseUri, IRESTListener listener) {
+    private AsyncRESTClient(Uri baseUri, IRESTListener listener, HttpValidators validators, Executor executor) {
         this.mBaseUri = baseUri;
         this.mListener = listener;
+        this.mValidators = validators;
+        this.mExecutor = executor;
+    }
+
+    public AsyncRESTClient(Uri baseUri, IRESTListener listener) {
+        this(baseUri, listener, null, null);
+    }
+
+    // For streamPage() calls: conditional GETs if validators is not null, with
+    // 304 Not Modified responses passed to IRESTStreamListener.onNotModified()
+    // Requests run on the given Executor, or the default (serial) AsyncTask executor if null
+    public AsyncRESTClient(Uri baseUri, HttpValidators validators, Executor executor) {
+        this(baseUri, null, validators, executor);
+    }
+
+    private static final int MAX_CONNECTIONS = 4;
+    private static DefaultHttpClient sHttpClient;
+
+    /**
+     * One HttpClient for all requests, so connections can be kept alive and re-used
+     * Thread-safe: requests may run in parallel (see SyncCoordinator)
+     */
+    static synchronized DefaultHttpClient getHttpClient() {
+        if (sHttpClient == null) {
+            HttpParams params = new BasicHttpParams();
+            HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+            HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
+            ConnManagerParams.setMaxTotalConnections(params, MAX_CONNECTIONS);
+            ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_CONNECTIONS));
+
+            SchemeRegistry registry = new SchemeRegistry();
+            registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+            registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+            sHttpClient = new DefaultHttpClient(new ThreadSafeClientConnManager(params, registry), params);
+            HttpCompression.enableGzip(sHttpClient);
+        }
+        return sHttpClient;
+    }
+
+    private void execute(AsyncRestCall<?> restCall) {
+        if (mExecutor != null) {
+            restCall.executeOnExecutor(mExecutor);
+        } else {
+            restCall.execute();
+        }
     }
 
     public void getAll() {
-        AsyncRestCall restCall = new AsyncRestCall() {
+        AsyncRestCall<String> restCall = new AsyncRestCall<String>(new BasicResponseHandler()) {
             @Override
             protected void onPostExecute(String results) {
                 mListener.onCompleted(results);
@@ -52,72 +131,265 @@ class AsyncRESTClient {
         };
 
         restCall.setRestUri(mBaseUri);
-        restCall.execute();
+        execute(restCall);
+    }
+
+    /**
+     * Get at most limit entities with an id greater than lastId, in id order. The response
+     * body is handed to the listener as a stream on the background thread instead of being
+     * buffered into a String (see JsonArrayIterator and PagedSync).
+     */
+    public <R> void streamPage(long lastId, int limit, final IRESTStreamListener<R> listener) {
+        Uri restUri = getPageUri(lastId, limit);
+        final StreamResponseHandler<R> handler = new StreamResponseHandler<R>(listener, restUri, mValidators);
+
+        AsyncRestCall<R> restCall = new AsyncRestCall<R>(handler) {
+            @Override
+            protected void onPostExecute(R result) {
+                if (handler.isNotModified()) {
+                    listener.onNotModified();
+                } else {
+                    listener.onStreamCompleted(result);
+                }
+            }
+        };
+
+        restCall.setRestUri(restUri);
+        restCall.setValidators(mValidators);
+        execute(restCall);
+    }
+
+    /**
+     * Blocking streamPage(), for callers that are already on a background thread (see PagedSync.run())
+     * The listener's onStreamCompleted() or onNotModified() is called on the calling thread before returning
+     */
+    <R> void fetchPage(long lastId, int limit, IRESTStreamListener<R> listener) {
+        Uri restUri = getPageUri(lastId, limit);
+        StreamResponseHandler<R> handler = new StreamResponseHandler<R>(listener, restUri, mValidators);
+
+        HttpGet httpGet = new HttpGet(restUri.toString());
+        if (mValidators != null) {
+            mValidators.addHeaders(httpGet, restUri);
+        }
+        R result = executeWithRetries(httpGet, handler, MAX_ATTEMPTS);
+        if (handler.isNotModified()) {
+            listener.onNotModified();
+        } else {
+            listener.onStreamCompleted(result);
+        }
+    }
+
+    /**
+     * @return URI of at most limit entities with an id greater than lastId (delta sync). Servers that
+     * ignore the after parameter return the full collection: PagedSync filters out the known rows
+     */
+    Uri getPageUri(long lastId, int limit) {
+        return mBaseUri.buildUpon()
+                .appendQueryParameter(PARAM_AFTER, String.valueOf(lastId))
+                .appendQueryParameter(PagedSync.PARAM_LIMIT, String.valueOf(limit))
+                .build();
+    }
+
+    /**
+     * Blocking GET for callers that are already on a background thread (see SyncEngine.update()),
+     * with the response body handed to the reader as a stream
+     *
+     * @param restUri     The URI to get
+     * @param reader      Reads the response body
+     * @param maxAttempts Give up after this many attempts (with backoff) if the request fails
+     * @return The result of reader.onStream(), or null if the request failed
+     */
+    <R> R fetch(Uri restUri, IRESTStreamReader<R> reader, int maxAttempts) {
+        return executeWithRetries(new HttpGet(restUri.toString()),
+                new StreamResponseHandler<R>(reader, restUri), maxAttempts);
+    }
+
+    /**
+     * @return URI of the entity with the given id
+     */
+    Uri getIndexUri(int index) {
+        return Uri.withAppendedPath(mBaseUri, String.valueOf(index));
+    }
+
+    /**
+     * @return URI of the entities with the given ids, for servers that support batched requests
+     */
+    Uri getIdsUri(Collection<Integer> ids) {
+        return mBaseUri.buildUpon()
+                .appendQueryParameter(PARAM_IDS, TextUtils.join(",", ids))
+                .build();
     }
 
     public void getIndex(int index) {
-        AsyncRestCall restCall = new AsyncRestCall() {
+        AsyncRestCall<String> restCall = new AsyncRestCall<String>(new BasicResponseHandler()) {
             @Override
             protected void onPostExecute(String results) {
                 mListener.onCompleted(results);
             }
         };
 
-        restCall.setRestUri(Uri.withAppendedPath(mBaseUri, String.valueOf(index)));
-        restCall.execute();
+        restCall.setRestUri(getIndexUri(index));
+        execute(restCall);
     }
 
-    private static final int MAX_ATTEMPTS = 5;
+    static final int MAX_ATTEMPTS = 5;
     private static final int BACKOFF_MILLI_SECONDS = 2000;
     private static final Random random = new Random();
 
-    private abstract class AsyncRestCall extends AsyncTask<Void, Void, String> {
-        private Uri mRestUri;
+    /**
+     * Execute a GET with the shared HttpClient, retrying I/O errors with exponential backoff
+     *
+     * @return The result of the handler, or null if every attempt failed
+     */
+    private <R> R executeWithRetries(HttpGet httpGet, ResponseHandler<R> handler, int maxAttempts) {
+        HttpClient httpClient = getHttpClient();
+        HttpContext localContext = new BasicHttpContext();
+        R responseBody = null;
 
-        private void setRestUri(Uri restUri) {
-            this.mRestUri = restUri;
-        }
+        long backoff = BACKOFF_MILLI_SECONDS + random.nextInt(1000);
 
-        @Override
-        protected String doInBackground(Void... params) {
-            HttpClient httpClient = new DefaultHttpClient();
-            HttpContext localContext = new BasicHttpContext();
-            ResponseHandler<String> handler = new BasicResponseHandler();
-            HttpGet httpGet = new HttpGet(mRestUri.toString());
-            String responseBody = null;
+        for (int i = 1; i <= maxAttempts; i++) {
+            Log.d(TAG, "Attempt #" + i + " to connect to " + mBaseUri);
 
-            long backoff = BACKOFF_MILLI_SECONDS + random.nextInt(1000);
+            try {
+                responseBody = httpClient.execute(httpGet, handler, localContext);
+                break;
 
-            for (int i = 1; i <= MAX_ATTEMPTS; i++) {
-                Log.d(TAG, "Attempt #" + i + " to connect to " + mBaseUri);
+            } catch (RuntimeException e) {
+                // Bad response data or database error: retrying will not help
+                e.printStackTrace();
+                break;
 
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to connect to " + mBaseUri + " on attempt " + i, e);
+                if (i == maxAttempts) {
+                    break;
+                }
                 try {
-                    HttpResponse response = httpClient.execute(httpGet, localContext);
-                    responseBody = handler.handleResponse(response);
+                    Log.d(TAG, "Sleeping for " + backoff + " ms before retry");
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e1) {
+                    // Activity finished before we complete - exit.
+                    Log.d(TAG, "Thread interrupted: abort remaining retries!");
+                    Thread.currentThread().interrupt();
                     break;
+                }
+                // increase backoff exponentially
+                backoff *= 2;
+            }
+        }
+        return responseBody;
+    }
+
+    /**
+     * Passes the response body to an IRESTStreamReader, with the same status
+     * handling as BasicResponseHandler, apart from 304 Not Modified
+     * Validators are only stored once the listener has processed the body.
+     * If the reader returns before the end of the body (see JsonArrayIterator.stop()), the
+     * connection is dropped rather than reading the rest of the body to re-use it.
+     */
+    private static class StreamResponseHandler<R> implements ResponseHandler<R> {
+        private final IRESTStreamReader<R> mReader;
+        private final IRESTStreamListener<R> mListener;
+        private final Uri mRestUri;
+        private final HttpValidators mValidators;
+        private volatile boolean mNotModified = false;
+
+        StreamResponseHandler(IRESTStreamReader<R> reader, Uri restUri) {
+            this(reader, null, restUri, null);
+        }
+
+        StreamResponseHandler(IRESTStreamListener<R> listener, Uri restUri, HttpValidators validators) {
+            this(listener, listener, restUri, validators);
+        }
 
-                } catch (IOException e) {
-                    Log.e(TAG, "Failed to connect to " + mBaseUri + " on attempt " + i, e);
-                    if (i == MAX_ATTEMPTS) {
-                        break;
-                    }
-                    try {
-                        Log.d(TAG, "Sleeping for " + backoff + " ms before retry");
-                            Thread.sleep(backoff);
-                        } catch (InterruptedException e1) {
-                            // Activity finished before we complete - exit.
-                            Log.d(TAG, "Thread interrupted: abort remaining retries!");
-                            Thread.currentThread().interrupt();
-                            break;
-                        }
-                        // increase backoff exponentially
-                        backoff *= 2;
-                    }
+        private StreamResponseHandler(IRESTStreamReader<R> reader, IRESTStreamListener<R> listener, Uri restUri,
+                                      HttpValidators validators) {
+            this.mReader = reader;
+            this.mListener = listener;
+            this.mRestUri = restUri;
+            this.mValidators = validators;
+        }
+
+        boolean isNotModified() {
+            return mNotModified;
+        }
+
+        @Override
+        public R handleResponse(HttpResponse response) throws IOException {
+            StatusLine statusLine = response.getStatusLine();
+            HttpEntity entity = response.getEntity();
+            if (statusLine.getStatusCode() == HttpStatus.SC_NOT_MODIFIED && mValidators != null) {
+                Log.d(TAG, "Not modified: " + mRestUri);
+                if (entity != null) {
+                    entity.consumeContent();
                 }
-            return responseBody;
+                mNotModified = true;
+                if (mListener != null) {
+                    mListener.onStreamNotModified();
+                }
+                return null;
+            }
+            if (statusLine.getStatusCode() >= 300) {
+                if (entity != null) {
+                    entity.consumeContent();
+                }
+                throw new HttpResponseException(statusLine.getStatusCode(), statusLine.getReasonPhrase());
+            }
+            if (entity == null) {
+                return null;
+            }
+
+            String charset = EntityUtils.getContentCharSet(entity);
+            Reader reader = new InputStreamReader(entity.getContent(), (charset != null) ? charset : HTTP.UTF_8);
+            try {
+                R result = mReader.onStream(reader);
+                if (reader.read() != -1 && entity instanceof ConnectionReleaseTrigger) {
+                    ((ConnectionReleaseTrigger) entity).abortConnection();
+                }
+                if (mValidators != null) {
+                    mValidators.save(mRestUri, response);
+                }
+                return result;
+            } catch (JsonIOException e) {
+                // Connection failures while parsing: retry like any other I/O error
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private abstract class AsyncRestCall<R> extends AsyncTask<Void, Void, R> {
+        private final ResponseHandler<R> mHandler;
+        private Uri mRestUri;
+        private HttpValidators mValidators;
+
+        AsyncRestCall(ResponseHandler<R> handler) {
+            this.mHandler = handler;
+        }
+
+        private void setRestUri(Uri restUri) {
+            this.mRestUri = restUri;
+        }
+
+        private void setValidators(HttpValidators validators) {
+            this.mValidators = validators;
+        }
+
+        @Override
+        protected R doInBackground(Void... params) {
+            HttpGet httpGet = new HttpGet(mRestUri.toString());
+            if (mValidators != null) {
+                mValidators.addHeaders(httpGet, mRestUri);
+            }
+            return executeWithRetries(httpGet, mHandler, MAX_ATTEMPTS);
         }
 
         @Override
-        abstract protected void onPostExecute(String results);
+        abstract protected void onPostExecute(R results);
     }
 }
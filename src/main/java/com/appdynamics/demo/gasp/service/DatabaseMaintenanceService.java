@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.service;
+
+import android.app.IntentService;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.appdynamics.demo.gasp.R;
+import com.appdynamics.demo.gasp.adapter.GaspDatabaseMaintenance;
+import com.appdynamics.demo.gasp.adapter.ReviewRetentionPolicy;
+import com.appdynamics.eumagent.runtime.Instrumentation;
+
+/**
+ * Background maintenance for the local Gasp database: applies the review retention policy
+ * (from Shared Preferences) and then runs an incremental vacuum, at most once per MAINTENANCE_INTERVAL
+ */
+public class DatabaseMaintenanceService extends IntentService {
+    private static final String TAG = DatabaseMaintenanceService.class.getName();
+
+    // Optional: also drop reviews with ids below this watermark
+    public static final String PARAM_MIN_REVIEW_ID = "minReviewId";
+    // Optional: run even if the last run was within MAINTENANCE_INTERVAL
+    public static final String PARAM_FORCE = "force";
+
+    private static final long MAINTENANCE_INTERVAL = 24 * 60 * 60 * 1000L;
+    private static final String LAST_RUN_KEY = "gasp_database_maintenance_last_run";
+
+    public DatabaseMaintenanceService() {
+        super("DatabaseMaintenanceService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        PreferenceManager.setDefaultValues(this, R.xml.preferences, false);
+        SharedPreferences gaspSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+
+        long now = System.currentTimeMillis();
+        long lastRun = gaspSharedPreferences.getLong(LAST_RUN_KEY, 0);
+        if (!intent.getBooleanExtra(PARAM_FORCE, false) && now - lastRun < MAINTENANCE_INTERVAL) {
+            Log.d(TAG, "Skipping database maintenance: last run " + (now - lastRun) / 1000 + "s ago");
+            return;
+        }
+
+        int keepPerRestaurant = ReviewRetentionPolicy.NO_LIMIT;
+        try {
+            keepPerRestaurant = Integer.valueOf(gaspSharedPreferences.getString(
+                    getString(R.string.review_retention_preferences), String.valueOf(ReviewRetentionPolicy.NO_LIMIT)));
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+        }
+        ReviewRetentionPolicy policy = new ReviewRetentionPolicy(keepPerRestaurant,
+                intent.getLongExtra(PARAM_MIN_REVIEW_ID, ReviewRetentionPolicy.NO_LIMIT));
+
+        Instrumentation.startTimer("GaspDatabaseMaintenance");
+        GaspDatabaseMaintenance maintenance = new GaspDatabaseMaintenance(this);
+        int evicted = maintenance.applyRetention(policy);
+        long reclaimed = maintenance.vacuum();
+        Instrumentation.stopTimer("GaspDatabaseMaintenance");
+
+        Instrumentation.reportMetric("Gasp Reviews Evicted", evicted);
+        Instrumentation.reportMetric("Gasp Database Bytes Reclaimed", reclaimed);
+        Log.i(TAG, "Database maintenance: evicted " + evicted + " reviews, reclaimed " + reclaimed + " bytes");
+
+        gaspSharedPreferences.edit().putLong(LAST_RUN_KEY, now).apply();
+    }
+}
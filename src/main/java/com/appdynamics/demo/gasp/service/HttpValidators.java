@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+
+/**
+ * Stores HTTP cache validators (ETag, Last-Modified) for conditional GETs
+ * One entry per endpoint, so the store stays small: the validators only apply to
+ * the exact URI (including query parameters) of the response they came from.
+ */
+class HttpValidators {
+    private static final String TAG = HttpValidators.class.getName();
+
+    private static final String PREFERENCES_NAME = "gasp_http_validators";
+
+    private static final String KEY_URI = ".uri";
+    private static final String KEY_ETAG = ".etag";
+    private static final String KEY_LAST_MODIFIED = ".lastModified";
+
+    private final SharedPreferences mPreferences;
+
+    HttpValidators(Context context) {
+        this.mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static String getEndpoint(Uri uri) {
+        return uri.buildUpon().clearQuery().fragment(null).build().toString();
+    }
+
+    /**
+     * Add If-None-Match/If-Modified-Since headers if validators are stored for this URI
+     *
+     * @param request The GET request
+     * @param uri     The request URI
+     */
+    void addHeaders(HttpRequest request, Uri uri) {
+        String endpoint = getEndpoint(uri);
+        if (!uri.toString().equals(mPreferences.getString(endpoint + KEY_URI, null))) {
+            return;
+        }
+
+        String etag = mPreferences.getString(endpoint + KEY_ETAG, null);
+        if (etag != null) {
+            request.setHeader("If-None-Match", etag);
+        }
+        String lastModified = mPreferences.getString(endpoint + KEY_LAST_MODIFIED, null);
+        if (lastModified != null) {
+            request.setHeader("If-Modified-Since", lastModified);
+        }
+    }
+
+    /**
+     * Store the validators of a response that has been processed successfully:
+     * never before, or a 304 could skip data that was not stored
+     *
+     * @param uri      The request URI
+     * @param response The 200 response
+     */
+    void save(Uri uri, HttpResponse response) {
+        String endpoint = getEndpoint(uri);
+        Header etag = response.getFirstHeader("ETag");
+        Header lastModified = response.getFirstHeader("Last-Modified");
+
+        SharedPreferences.Editor editor = mPreferences.edit();
+        if (etag == null && lastModified == null) {
+            editor.remove(endpoint + KEY_URI)
+                  .remove(endpoint + KEY_ETAG)
+                  .remove(endpoint + KEY_LAST_MODIFIED);
+        } else {
+            Log.d(TAG, "Validators for " + uri + ": " + etag + ", " + lastModified);
+            editor.putString(endpoint + KEY_URI, uri.toString())
+                  .putString(endpoint + KEY_ETAG, (etag != null) ? etag.getValue() : null)
+                  .putString(endpoint + KEY_LAST_MODIFIED, (lastModified != null) ? lastModified.getValue() : null);
+        }
+        editor.apply();
+    }
+}
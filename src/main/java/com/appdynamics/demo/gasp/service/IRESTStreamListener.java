@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.service;
+
+interface IRESTStreamListener<R> extends IRESTStreamReader<R> {
+    // Called on the UI thread with the result of onStream(), or null if the request failed
+    void onStreamCompleted(R result);
+
+    // Called on the background thread instead of onStream() if a conditional GET returned 304 Not Modified
+    void onStreamNotModified();
+
+    // Called on the UI thread instead of onStreamCompleted() if a conditional GET returned 304 Not Modified
+    void onNotModified();
+}
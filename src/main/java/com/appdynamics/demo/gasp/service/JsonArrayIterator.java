@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.service;
+
+import com.appdynamics.demo.gasp.model.GaspDataObject;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over a JSON array of Gasp entities as it is read from the stream, so that
+ * only one element is held in memory at a time. Elements with an id at or below lastId
+ * are skipped (client-side fallback for servers that ignore delta sync).
+ * I/O errors are thrown as JsonIOException.
+ */
+class JsonArrayIterator<T extends GaspDataObject> implements Iterator<T> {
+    private final JsonReader mReader;
+    private final Gson mGson;
+    private final Class<T> mType;
+    private final long mLastId;
+
+    private T mNext;
+    private int mRead = 0;
+    private int mFiltered = 0;
+    private boolean mStopped = false;
+
+    JsonArrayIterator(Reader reader, Gson gson, Class<T> type, long lastId) {
+        this.mReader = new JsonReader(reader);
+        this.mGson = gson;
+        this.mType = type;
+        this.mLastId = lastId;
+
+        try {
+            if (mReader.peek() == JsonToken.BEGIN_ARRAY) {
+                mReader.beginArray();
+            }
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (mNext == null && !mStopped && mReader.hasNext()) {
+                T element = mGson.fromJson(mReader, mType);
+                mRead++;
+                if (element != null && accept(element)) {
+                    mNext = element;
+                } else {
+                    mFiltered++;
+                }
+            }
+            return mNext != null;
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        } catch (JsonSyntaxException e) {
+            // Gson reports a stream cut off in the middle of an element as a syntax error
+            if (e.getCause() instanceof IOException) {
+                throw new JsonIOException(e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return true to return the element, false to skip it; by default, if its id is above lastId
+     */
+    protected boolean accept(T element) {
+        return element.getId() > mLastId;
+    }
+
+    /**
+     * End the iteration without reading the rest of the stream, e.g. from accept():
+     * elements already returned are unaffected, hasNext() returns false from now on
+     */
+    protected void stop() {
+        mStopped = true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T element = mNext;
+        mNext = null;
+        return element;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return Number of elements read from the stream so far
+     */
+    int getRead() {
+        return mRead;
+    }
+
+    /**
+     * @return Number of elements skipped because they were already synced (or not accepted)
+     */
+    int getFiltered() {
+        return mFiltered;
+    }
+}
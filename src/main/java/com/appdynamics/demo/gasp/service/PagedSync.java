@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.appdynamics.demo.gasp.adapter.GaspDataAdapter;
+import com.appdynamics.demo.gasp.adapter.InsertResult;
+import com.appdynamics.demo.gasp.adapter.SyncState;
+import com.appdynamics.demo.gasp.model.GaspDataObject;
+import com.appdynamics.demo.gasp.utils.HttpCompression;
+import com.appdynamics.eumagent.runtime.Instrumentation;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.Executor;
+
+/**
+ * Syncs a Gasp table one page at a time (?after=<lastId>&limit=<pageSize>)
+ * Each page is stored in its own transaction together with the sync state, so a failed
+ * request is retried for that page only, and a later sync resumes after the last stored page.
+ * The page size adapts to the observed throughput and is remembered between syncs.
+ * Servers that ignore the limit parameter return everything in one page.
+ * Pages are requested with conditional GETs: a 304 Not Modified ends the sync without
+ * parsing or database work.
+ */
+class PagedSync<T extends GaspDataObject> implements IRESTStreamListener<PagedSync.Page> {
+    private static final String TAG = PagedSync.class.getName();
+
+    static final String PARAM_LIMIT = "limit";
+
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MIN_PAGE_SIZE = 25;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    // Aim for pages that take about this long to fetch and store
+    static final long TARGET_PAGE_MILLIS = 2000;
+
+    static final String PAGE_SIZE_KEY = "sync_page_size_";
+
+    private static final long NO_PAGE = -1;
+
+    interface Listener<T> {
+        // Called on the background thread for each new row, before it is stored
+        void onRowSynced(T row);
+
+        // Called on the UI thread (or the run() thread) after the last page has been stored, or a page failed
+        void onSyncCompleted(boolean success, int inserted);
+    }
+
+    static class Page {
+        int read;
+        int inserted;
+        long lastId;
+        boolean progress;
+    }
+
+    private final Context mContext;
+    private final AsyncRESTClient mClient;
+    private final GaspDataAdapter<T> mDataAdapter;
+    private final Class<T> mType;
+    private final Listener<T> mListener;
+
+    private String mPageSizeKey;
+    private int mPageSize;
+    private int mInserted;
+    private long mPageStart;
+    private long mStartId;
+
+    // run() only: the page to request once the current one has been handled
+    private boolean mBlocking = false;
+    private long mNextPageId = NO_PAGE;
+
+    PagedSync(Context context, Uri uri, GaspDataAdapter<T> dataAdapter, Class<T> type, Listener<T> listener) {
+        this(context, uri, dataAdapter, type, listener, null);
+    }
+
+    PagedSync(Context context, Uri uri, GaspDataAdapter<T> dataAdapter, Class<T> type, Listener<T> listener,
+              Executor executor) {
+        this.mContext = context.getApplicationContext();
+        this.mClient = new AsyncRESTClient(uri, new HttpValidators(mContext), executor);
+        this.mDataAdapter = dataAdapter;
+        this.mType = type;
+        this.mListener = listener;
+    }
+
+    /**
+     * Run the whole sync on the calling background thread (e.g. an IntentService):
+     * pages are fetched one after another, and the listener's onSyncCompleted() is
+     * called on this thread before run() returns
+     */
+    void run() {
+        loadState();
+        mBlocking = true;
+        mInserted = 0;
+        fetchPage(mStartId);
+        while (mNextPageId != NO_PAGE) {
+            long lastId = mNextPageId;
+            mNextPageId = NO_PAGE;
+            mClient.fetchPage(lastId, mPageSize, this);
+        }
+    }
+
+    /**
+     * Read the last synced id and page size before resume(): may be called on a background thread
+     */
+    void loadState() {
+        SyncState syncState;
+        mDataAdapter.open();
+        try {
+            syncState = mDataAdapter.getSyncState();
+        } finally {
+            mDataAdapter.close();
+        }
+
+        mPageSizeKey = PAGE_SIZE_KEY + syncState.getEntity();
+        mPageSize = getPreferences().getInt(mPageSizeKey, DEFAULT_PAGE_SIZE);
+        mStartId = syncState.getLastId();
+    }
+
+    /**
+     * Fetch the first page after loadState(): call on the UI thread, like any AsyncTask
+     */
+    void resume() {
+        mInserted = 0;
+        fetchPage(mStartId);
+    }
+
+    private SharedPreferences getPreferences() {
+        return PreferenceManager.getDefaultSharedPreferences(mContext);
+    }
+
+    private void fetchPage(long lastId) {
+        Log.d(TAG, "Fetching " + mPageSize + " " + mType.getSimpleName() + " rows after id " + lastId);
+        mPageStart = SystemClock.elapsedRealtime();
+        if (mBlocking) {
+            // Requested by the run() loop, rather than from this callback, so the stack does not grow per page
+            mNextPageId = lastId;
+        } else {
+            mClient.streamPage(lastId, mPageSize, this);
+        }
+    }
+
+    @Override
+    public Page onStream(Reader content) throws IOException {
+        mDataAdapter.open();
+        try {
+            SyncState syncState = mDataAdapter.getSyncState();
+            long lastId = syncState.getLastId();
+
+            // Rows up to the last synced id are already stored: the iterator filters them
+            // in case the server ignores the after parameter
+            JsonArrayIterator<T> rows = new JsonArrayIterator<T>(content, SyncEngine.getGson(), mType, lastId) {
+                @Override
+                public T next() {
+                    T row = super.next();
+                    if (mListener != null) {
+                        mListener.onRowSynced(row);
+                    }
+                    return row;
+                }
+            };
+            InsertResult result = mDataAdapter.insertAll(rows, syncState, mPageSize);
+
+            if (rows.getFiltered() > 0) {
+                Log.w(TAG, "Server ignored delta sync, discarded " + rows.getFiltered() + " known rows");
+            }
+
+            Page page = new Page();
+            page.read = rows.getRead();
+            page.inserted = result.getInserted();
+            page.lastId = syncState.getLastId();
+            page.progress = page.lastId > lastId;
+            return page;
+        } finally {
+            mDataAdapter.close();
+        }
+    }
+
+    @Override
+    public void onStreamCompleted(Page page) {
+        long elapsed = SystemClock.elapsedRealtime() - mPageStart;
+        int pageSize = mPageSize;
+
+        if (page == null) {
+            // Every attempt failed: try smaller pages next time, resuming after the last stored page
+            setPageSize(Math.max(MIN_PAGE_SIZE, pageSize / 2));
+            Log.e(TAG, "Sync failed after " + mInserted + " " + mType.getSimpleName() + " rows");
+            notifyCompleted(false);
+            return;
+        }
+
+        mInserted += page.inserted;
+        Log.d(TAG, "Page of " + page.read + " rows stored in " + elapsed + " ms");
+
+        // Only full pages say anything about throughput; keeping the size otherwise
+        // also keeps the URI of the last page stable for conditional GETs
+        if (page.read == pageSize) {
+            setPageSize(nextPageSize(pageSize, elapsed));
+        }
+
+        // Only a full page that moved the watermark on can be followed by more rows
+        if (page.read == pageSize && page.progress) {
+            fetchPage(page.lastId);
+        } else {
+            Log.i(TAG, "Sync: Loaded " + mInserted + " " + mType.getSimpleName() + " rows, last id " + page.lastId);
+            notifyCompleted(true);
+        }
+    }
+
+    @Override
+    public void onStreamNotModified() {
+        // Nothing new on the server: the table is as fresh as if the page had been stored (see SyncScheduler)
+        mDataAdapter.open();
+        try {
+            mDataAdapter.saveSyncState(mDataAdapter.getSyncState());
+        } finally {
+            mDataAdapter.close();
+        }
+    }
+
+    @Override
+    public void onNotModified() {
+        // Same response as the last time this page was requested, which has already been stored
+        Log.i(TAG, "Sync: " + mType.getSimpleName() + " rows not modified, loaded " + mInserted);
+        notifyCompleted(true);
+    }
+
+    private void notifyCompleted(boolean success) {
+        Instrumentation.reportMetric("Gasp HTTP Bytes Received", HttpCompression.getBytesReceived());
+        Instrumentation.reportMetric("Gasp HTTP Bytes Decoded", HttpCompression.getBytesDecoded());
+
+        if (mListener != null) {
+            mListener.onSyncCompleted(success, mInserted);
+        }
+    }
+
+    private void setPageSize(int pageSize) {
+        if (pageSize != mPageSize) {
+            mPageSize = pageSize;
+            getPreferences().edit().putInt(mPageSizeKey, pageSize).apply();
+        }
+    }
+
+    /**
+     * Scale the page size towards TARGET_PAGE_MILLIS per page: at most double
+     * or halve it each time, within MIN_PAGE_SIZE and MAX_PAGE_SIZE
+     *
+     * @param pageSize      The size of the last page
+     * @param elapsedMillis Time taken to fetch and store the last page
+     * @return The size of the next page
+     */
+    static int nextPageSize(int pageSize, long elapsedMillis) {
+        long next = (elapsedMillis > 0) ? pageSize * TARGET_PAGE_MILLIS / elapsedMillis : pageSize * 2L;
+        next = Math.max(pageSize / 2, Math.min(pageSize * 2L, next));
+        return (int) Math.max(MIN_PAGE_SIZE, Math.min(MAX_PAGE_SIZE, next));
+    }
+}
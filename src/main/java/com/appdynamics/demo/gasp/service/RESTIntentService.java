@@ -23,11 +23,12 @@ import android.os.Bundle;
 import android.os.ResultReceiver;
 import android.util.Log;
 
+import com.appdynamics.demo.gasp.utils.HttpCompression;
+
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
@@ -135,7 +136,8 @@ public class RESTIntentService extends IntentService {
             }
             
             if (request != null) {
-                HttpClient client = new DefaultHttpClient();
+                DefaultHttpClient client = new DefaultHttpClient();
+                HttpCompression.enableGzip(client);
 
                 Log.d(TAG, "Executing request: "+ verbToString(verb) +": "+ action.toString());
                 
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.service;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.content.LocalBroadcastManager;
+import android.util.Log;
+
+import com.appdynamics.demo.gasp.model.GaspDataObject;
+import com.appdynamics.eumagent.runtime.Instrumentation;
+
+import java.util.Collection;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a full sync of every SyncEntity in parallel on a bounded thread pool
+ * (sharing AsyncRESTClient's HttpClient), and broadcasts (LocalBroadcastManager)
+ * one ACTION_ENTITY_SYNCED per table and one ACTION_SYNC_COMPLETED at the end,
+ * with record counts and timings.
+ * start() and the listener callbacks run on the UI thread, so no locking is needed.
+ */
+public class SyncCoordinator {
+    private static final String TAG = SyncCoordinator.class.getName();
+
+    public static final String ACTION_ENTITY_SYNCED = "gasp-sync-entity";
+    public static final String ACTION_SYNC_COMPLETED = "gasp-sync-completed";
+
+    // Table name (see GaspTables), ACTION_ENTITY_SYNCED only
+    public static final String EXTRA_ENTITY = "entity";
+    public static final String EXTRA_SUCCESS = "success";
+    public static final String EXTRA_INSERTED = "inserted";
+    public static final String EXTRA_ELAPSED_MILLIS = "elapsedMillis";
+    // ACTION_ENTITY_SYNCED sent by SyncScheduler for a table that was fresh enough not to sync,
+    // or whose sync was deferred (see SyncScheduler.MIN_INTERVAL_MILLIS): the local data is ready to show
+    public static final String EXTRA_SKIPPED = "skipped";
+
+    private static final int MAX_THREADS = 3;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static SyncCoordinator sInstance;
+
+    private final Context mContext;
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private boolean mRunning = false;
+    private int mPending;
+    private int mInserted;
+    private boolean mSuccess;
+    private long mStartTime;
+
+    private SyncCoordinator(Context context) {
+        this.mContext = context.getApplicationContext();
+        this.mExecutor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        this.mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized SyncCoordinator getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncCoordinator(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return true while a sync started by start() is in progress
+     */
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Sync all Gasp tables, unless a sync is already running
+     * Call on the UI thread.
+     *
+     * @return false if a sync was already running
+     */
+    public boolean start() {
+        return start(SyncEntity.getAll());
+    }
+
+    /**
+     * Sync the given Gasp tables, unless a sync is already running
+     * Call on the UI thread.
+     *
+     * @return false if a sync was already running, or there was nothing to sync
+     */
+    public boolean start(Collection<? extends SyncEntity<?>> entities) {
+        if (mRunning) {
+            Log.d(TAG, "Sync already running");
+            return false;
+        }
+        if (entities.isEmpty()) {
+            return false;
+        }
+        mRunning = true;
+        mPending = entities.size();
+        mInserted = 0;
+        mSuccess = true;
+        mStartTime = SystemClock.elapsedRealtime();
+        Instrumentation.startTimer("GaspSync");
+
+        SyncEngine syncEngine = SyncEngine.getInstance(mContext);
+        for (SyncEntity<?> entity : entities) {
+            startSync(syncEngine, entity);
+        }
+        return true;
+    }
+
+    private <T extends GaspDataObject> void startSync(SyncEngine syncEngine, SyncEntity<T> entity) {
+        final EntityListener<T> listener = new EntityListener<T>(entity.getName());
+        final PagedSync<T> sync = syncEngine.newFullSync(entity, listener, mExecutor);
+        Log.i(TAG, "Syncing from " + syncEngine.getUri(entity));
+
+        // Read the sync state off the UI thread, then start the page requests from it
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sync.loadState();
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            sync.resume();
+                        }
+                    });
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onSyncCompleted(false, 0);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void onEntitySynced(String entity, boolean success, int inserted) {
+        long elapsed = SystemClock.elapsedRealtime() - mStartTime;
+        Log.i(TAG, "Synced " + entity + " in " + elapsed + " ms: " + (success ? "loaded " + inserted : "failed"));
+
+        LocalBroadcastManager.getInstance(mContext).sendBroadcast(new Intent(ACTION_ENTITY_SYNCED)
+                .putExtra(EXTRA_ENTITY, entity)
+                .putExtra(EXTRA_SUCCESS, success)
+                .putExtra(EXTRA_INSERTED, inserted)
+                .putExtra(EXTRA_ELAPSED_MILLIS, elapsed));
+
+        mInserted += inserted;
+        mSuccess &= success;
+        if (--mPending == 0) {
+            Instrumentation.stopTimer("GaspSync");
+            Instrumentation.reportMetric("Gasp Sync Rows Loaded", mInserted);
+            Log.i(TAG, "Sync completed in " + elapsed + " ms: loaded " + mInserted);
+
+            mRunning = false;
+            LocalBroadcastManager.getInstance(mContext).sendBroadcast(new Intent(ACTION_SYNC_COMPLETED)
+                    .putExtra(EXTRA_SUCCESS, mSuccess)
+                    .putExtra(EXTRA_INSERTED, mInserted)
+                    .putExtra(EXTRA_ELAPSED_MILLIS, elapsed));
+        }
+    }
+
+    private class EntityListener<T> implements PagedSync.Listener<T> {
+        private final String mEntity;
+
+        EntityListener(String entity) {
+            this.mEntity = entity;
+        }
+
+        @Override
+        public void onRowSynced(T row) {
+        }
+
+        @Override
+        public void onSyncCompleted(boolean success, int inserted) {
+            onEntitySynced(mEntity, success, inserted);
+        }
+    }
+}
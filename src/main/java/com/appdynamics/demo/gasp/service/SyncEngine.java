@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.appdynamics.demo.gasp.R;
+import com.appdynamics.demo.gasp.adapter.GaspDataAdapter;
+import com.appdynamics.demo.gasp.adapter.IdIndex;
+import com.appdynamics.demo.gasp.model.GaspDataObject;
+import com.appdynamics.eumagent.runtime.Instrumentation;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Syncs any Gasp table described by a SyncEntity, either in full (every row after the
+ * local watermark, see PagedSync) or just the rows with given ids (GCM updates, see UpdateBatcher).
+ * The Gasp server URI is read from the preferences once and kept up to date by a listener;
+ * Gson and the HttpClient (see AsyncRESTClient) are shared by every sync.
+ */
+class SyncEngine implements SharedPreferences.OnSharedPreferenceChangeListener {
+    private static final String TAG = SyncEngine.class.getName();
+
+    // Ids per batched update request, to keep the URI short
+    static final int MAX_BATCH_IDS = 100;
+    // Concurrent single-row requests when the server does not support batched updates
+    static final int MAX_UPDATE_THREADS = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    static final String PREFERENCES = "gasp_sync_engine";
+    // Server URI that answered a batched request with rows that were not requested (it ignores ?ids=)
+    static final String IDS_IGNORED_KEY = "ids_ignored_by";
+
+    private static final Gson sGson = new Gson();
+
+    private static SyncEngine sInstance;
+
+    private final Context mContext;
+    private final String mServerUriKey;
+    private final SharedPreferences mPreferences;
+    private volatile String mServerUri;
+    private final ThreadPoolExecutor mUpdateExecutor;
+
+    private SyncEngine(Context context) {
+        this.mContext = context.getApplicationContext();
+        this.mServerUriKey = mContext.getString(R.string.gasp_server_uri_preferences);
+        this.mPreferences = mContext.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+
+        PreferenceManager.setDefaultValues(mContext, R.xml.preferences, false);
+        SharedPreferences gaspSharedPreferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        this.mServerUri = gaspSharedPreferences.getString(mServerUriKey, "");
+        gaspSharedPreferences.registerOnSharedPreferenceChangeListener(this);
+
+        this.mUpdateExecutor = new ThreadPoolExecutor(MAX_UPDATE_THREADS, MAX_UPDATE_THREADS,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        this.mUpdateExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    static synchronized SyncEngine getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncEngine(context);
+        }
+        return sInstance;
+    }
+
+    static Gson getGson() {
+        return sGson;
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (mServerUriKey.equals(key)) {
+            mServerUri = sharedPreferences.getString(mServerUriKey, "");
+            Log.i(TAG, "Gasp Server URI changed: " + mServerUri);
+        }
+    }
+
+    /**
+     * @return The REST collection URI for the table
+     */
+    Uri getUri(SyncEntity<?> entity) {
+        return Uri.parse(mServerUri + mContext.getString(entity.getLocationResId()));
+    }
+
+    /**
+     * Create a full sync of the table: call start() on the UI thread, or run() on a background thread
+     *
+     * @param entity   The table to sync
+     * @param listener Notified of each row and on completion, may be null
+     * @param executor Executor for the page requests, or null for the default AsyncTask executor
+     */
+    <T extends GaspDataObject> PagedSync<T> newFullSync(SyncEntity<T> entity, PagedSync.Listener<T> listener,
+                                                        Executor executor) {
+        return new PagedSync<T>(mContext, getUri(entity), entity.newDataAdapter(mContext), entity.getType(),
+                new PipelineListener<T>(entity, listener), executor);
+    }
+
+    /**
+     * Fetch and store the rows of the table with the given ids, e.g. after GCM messages
+     * Blocks: call on a background thread.
+     * Ids are requested up to MAX_BATCH_IDS at a time (?ids=1,2,3) and each batch is stored in
+     * a single transaction. Ids that a batch does not return, or all of them if the batched
+     * request fails, are then fetched one by one, MAX_UPDATE_THREADS at a time.
+     * A server that answers with rows that were not requested ignores the ids parameter and would
+     * send the whole table: the response is dropped at the first such row, and later updates skip
+     * batched requests to that server (see IDS_IGNORED_KEY).
+     * Ids that the table already holds (see GaspDataAdapter.exists()) are not requested at all.
+     *
+     * @param entity The table to update
+     * @param ids    Ids of the new rows
+     * @return Number of rows inserted: rows that could not be fetched, or were already stored, are not counted
+     */
+    <T extends GaspDataObject> int update(SyncEntity<T> entity, Collection<Integer> ids) {
+        Set<Integer> uniqueIds = new LinkedHashSet<Integer>(ids);
+        List<Integer> idList = new ArrayList<Integer>(uniqueIds.size());
+
+        // Rows that are already stored (e.g. by a full sync) need no request
+        GaspDataAdapter<T> dataAdapter = entity.newDataAdapter(mContext);
+        dataAdapter.open();
+        try {
+            for (Integer id : uniqueIds) {
+                if (!dataAdapter.exists(id)) {
+                    idList.add(id);
+                }
+            }
+        } finally {
+            dataAdapter.close();
+        }
+
+        IdIndex idIndex = IdIndex.forTable(entity.getName());
+        Instrumentation.reportMetric("Gasp Update Local Hits", idIndex.getHits());
+        Instrumentation.reportMetric("Gasp Update Local Misses", idIndex.getMisses());
+        if (idList.size() < uniqueIds.size()) {
+            Log.d(TAG, "Update " + entity + ": " + (uniqueIds.size() - idList.size()) + " rows already stored");
+        }
+
+        String serverUri = mServerUri;
+        AsyncRESTClient client = new AsyncRESTClient(getUri(entity), (HttpValidators) null, null);
+        boolean batched = !serverUri.equals(mPreferences.getString(IDS_IGNORED_KEY, null));
+        int inserted = 0;
+
+        for (int i = 0; i < idList.size(); i += MAX_BATCH_IDS) {
+            List<Integer> batch = idList.subList(i, Math.min(idList.size(), i + MAX_BATCH_IDS));
+            List<Integer> missing = batch;
+
+            if (batched) {
+                // One attempt only: a server without batch support fails the same way every time
+                BatchReader<T> reader = new BatchReader<T>(entity, batch);
+                Integer batchInserted = client.fetch(client.getIdsUri(batch), reader, 1);
+                if (batchInserted == null) {
+                    Log.w(TAG, "Batched " + entity + " update failed: fetching " + batch.size() + " rows one at a time");
+                } else {
+                    inserted += batchInserted;
+                    missing = reader.getMissing();
+                    if (reader.isIdsIgnored()) {
+                        Log.w(TAG, "Server ignores batched requests, fetching rows one at a time: " + serverUri);
+                        mPreferences.edit().putString(IDS_IGNORED_KEY, serverUri).apply();
+                        batched = false;
+                    }
+                }
+            }
+
+            if (!missing.isEmpty()) {
+                inserted += fetchEach(client, entity, missing);
+            }
+        }
+
+        Log.i(TAG, "Update " + entity + ": loaded " + inserted + " of " + uniqueIds.size());
+        return inserted;
+    }
+
+    private <T extends GaspDataObject> int fetchEach(final AsyncRESTClient client, final SyncEntity<T> entity,
+                                                     List<Integer> ids) {
+        final IRESTStreamReader<T> reader = new IRESTStreamReader<T>() {
+            @Override
+            public T onStream(Reader content) throws IOException {
+                return sGson.fromJson(content, entity.getType());
+            }
+        };
+
+        List<Future<T>> futures = new ArrayList<Future<T>>(ids.size());
+        for (final Integer id : ids) {
+            futures.add(mUpdateExecutor.submit(new Callable<T>() {
+                @Override
+                public T call() {
+                    return client.fetch(client.getIndexUri(id), reader, AsyncRESTClient.MAX_ATTEMPTS);
+                }
+            }));
+        }
+
+        List<T> rows = new ArrayList<T>(ids.size());
+        for (Future<T> future : futures) {
+            try {
+                T row = future.get();
+                if (row != null) {
+                    entity.processRow(row);
+                    rows.add(row);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Whatever was fetched, in one transaction (duplicate ids are skipped, not an error)
+        GaspDataAdapter<T> dataAdapter = entity.newDataAdapter(mContext);
+        dataAdapter.open();
+        try {
+            return dataAdapter.insertAll(rows).getInserted();
+        } finally {
+            dataAdapter.close();
+        }
+    }
+
+    /**
+     * Stores the response to a batched request as it is read, in a single transaction
+     * Servers that ignore the ids parameter return the whole collection: reading stops at the
+     * first row that was not requested, keeping the requested rows read before it.
+     */
+    private class BatchReader<T extends GaspDataObject> implements IRESTStreamReader<Integer> {
+        private final SyncEntity<T> mEntity;
+        private final List<Integer> mIds;
+        private final Set<Integer> mRequested;
+        private final Set<Integer> mReceived = new HashSet<Integer>();
+        private boolean mIdsIgnored = false;
+
+        BatchReader(SyncEntity<T> entity, List<Integer> ids) {
+            this.mEntity = entity;
+            this.mIds = ids;
+            this.mRequested = new HashSet<Integer>(ids);
+        }
+
+        /**
+         * @return true if the server sent a row that was not requested
+         */
+        boolean isIdsIgnored() {
+            return mIdsIgnored;
+        }
+
+        /**
+         * @return Requested ids that were not in the response
+         */
+        List<Integer> getMissing() {
+            List<Integer> missing = new ArrayList<Integer>();
+            for (Integer id : mIds) {
+                if (!mReceived.contains(id)) {
+                    missing.add(id);
+                }
+            }
+            return missing;
+        }
+
+        @Override
+        public Integer onStream(Reader content) throws IOException {
+            JsonArrayIterator<T> rows = new JsonArrayIterator<T>(content, sGson, mEntity.getType(), 0) {
+                @Override
+                protected boolean accept(T row) {
+                    if (mRequested.contains(row.getId())) {
+                        mReceived.add(row.getId());
+                        return true;
+                    }
+                    mIdsIgnored = true;
+                    stop();
+                    return false;
+                }
+
+                @Override
+                public T next() {
+                    T row = super.next();
+                    mEntity.processRow(row);
+                    return row;
+                }
+            };
+
+            GaspDataAdapter<T> dataAdapter = mEntity.newDataAdapter(mContext);
+            dataAdapter.open();
+            try {
+                return dataAdapter.insertAll(rows).getInserted();
+            } finally {
+                dataAdapter.close();
+            }
+        }
+    }
+
+    /**
+     * Runs each new row through the SyncEntity's pipeline, then the caller's listener
+     */
+    private static class PipelineListener<T extends GaspDataObject> implements PagedSync.Listener<T> {
+        private final SyncEntity<T> mEntity;
+        private final PagedSync.Listener<T> mListener;
+
+        PipelineListener(SyncEntity<T> entity, PagedSync.Listener<T> listener) {
+            this.mEntity = entity;
+            this.mListener = listener;
+        }
+
+        @Override
+        public void onRowSynced(T row) {
+            mEntity.processRow(row);
+            if (mListener != null) {
+                mListener.onRowSynced(row);
+            }
+        }
+
+        @Override
+        public void onSyncCompleted(boolean success, int inserted) {
+            if (mListener != null) {
+                mListener.onSyncCompleted(success, inserted);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.service;
+
+import android.content.Context;
+
+import com.appdynamics.demo.gasp.R;
+import com.appdynamics.demo.gasp.adapter.GaspDataAdapter;
+import com.appdynamics.demo.gasp.adapter.GaspTables;
+import com.appdynamics.demo.gasp.adapter.RestaurantDataAdapter;
+import com.appdynamics.demo.gasp.adapter.ReviewDataAdapter;
+import com.appdynamics.demo.gasp.adapter.UserDataAdapter;
+import com.appdynamics.demo.gasp.model.GaspDataObject;
+import com.appdynamics.demo.gasp.model.Restaurant;
+import com.appdynamics.demo.gasp.model.Review;
+import com.appdynamics.demo.gasp.model.User;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Describes a Gasp table to the sync engine (see SyncEngine): REST location, model class,
+ * data adapter, freshness TTL and the processors each synced row is passed through before it is stored.
+ * Adding a synced table only needs a new SyncEntity in getAll().
+ */
+public abstract class SyncEntity<T extends GaspDataObject> {
+
+    /**
+     * A sync pipeline stage, called on a background thread for each new row before it is stored
+     */
+    public interface RowProcessor<T> {
+        void process(T row);
+    }
+
+    private static final long MINUTE_MILLIS = 60 * 1000L;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+
+    public static final SyncEntity<Restaurant> RESTAURANTS =
+            new SyncEntity<Restaurant>(GaspTables.RESTAURANTS, R.string.gasp_restaurants_location,
+                    Restaurant.class, 6 * HOUR_MILLIS) {
+                @Override
+                public GaspDataAdapter<Restaurant> newDataAdapter(Context context) {
+                    return new RestaurantDataAdapter(context);
+                }
+            };
+
+    public static final SyncEntity<Review> REVIEWS =
+            new SyncEntity<Review>(GaspTables.REVIEWS, R.string.gasp_reviews_location, Review.class,
+                    15 * MINUTE_MILLIS) {
+                @Override
+                public GaspDataAdapter<Review> newDataAdapter(Context context) {
+                    return new ReviewDataAdapter(context);
+                }
+            };
+
+    public static final SyncEntity<User> USERS =
+            new SyncEntity<User>(GaspTables.USERS, R.string.gasp_users_location, User.class,
+                    HOUR_MILLIS) {
+                @Override
+                public GaspDataAdapter<User> newDataAdapter(Context context) {
+                    return new UserDataAdapter(context);
+                }
+            };
+
+    private static final List<SyncEntity<?>> sEntities =
+            Collections.unmodifiableList(Arrays.<SyncEntity<?>>asList(RESTAURANTS, REVIEWS, USERS));
+
+    private final String mName;
+    private final int mLocationResId;
+    private final Class<T> mType;
+    private final long mTtlMillis;
+    private final List<RowProcessor<? super T>> mRowProcessors = new CopyOnWriteArrayList<RowProcessor<? super T>>();
+
+    /**
+     * @param name          Table name, as in GaspTables and GCM messages
+     * @param locationResId String resource for the REST location, relative to the Gasp server URI
+     * @param type          Model class, for Gson
+     * @param ttlMillis     How long a synced table is fresh enough to skip the next scheduled sync
+     */
+    protected SyncEntity(String name, int locationResId, Class<T> type, long ttlMillis) {
+        this.mName = name;
+        this.mLocationResId = locationResId;
+        this.mType = type;
+        this.mTtlMillis = ttlMillis;
+    }
+
+    /**
+     * @return Every synced table
+     */
+    public static List<SyncEntity<?>> getAll() {
+        return sEntities;
+    }
+
+    /**
+     * @param name Table name, e.g. from a GCM message
+     * @return The SyncEntity for the table, or null if it is not synced
+     */
+    public static SyncEntity<?> forName(String name) {
+        for (SyncEntity<?> entity : sEntities) {
+            if (entity.getName().equals(name)) {
+                return entity;
+            }
+        }
+        return null;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getLocationResId() {
+        return mLocationResId;
+    }
+
+    public Class<T> getType() {
+        return mType;
+    }
+
+    /**
+     * @return Freshness TTL (see SyncScheduler)
+     */
+    public long getTtlMillis() {
+        return mTtlMillis;
+    }
+
+    /**
+     * @param context Any Context
+     * @return A new (unopened) data adapter for the table
+     */
+    public abstract GaspDataAdapter<T> newDataAdapter(Context context);
+
+    /**
+     * Append a stage to the row pipeline
+     */
+    public SyncEntity<T> addRowProcessor(RowProcessor<? super T> rowProcessor) {
+        mRowProcessors.add(rowProcessor);
+        return this;
+    }
+
+    /**
+     * Pass a new row through every stage of the pipeline, in order
+     */
+    void processRow(T row) {
+        for (RowProcessor<? super T> rowProcessor : mRowProcessors) {
+            rowProcessor.process(row);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+}
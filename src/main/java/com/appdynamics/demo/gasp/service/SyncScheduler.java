@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.service;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.content.LocalBroadcastManager;
+import android.util.Log;
+
+import com.appdynamics.demo.gasp.adapter.GaspDataAdapter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decides when the SyncCoordinator runs, so that cold starts do not re-sync fresh data
+ * - A table is only synced once its TTL (SyncEntity.getTtlMillis()) has passed since its last
+ *   successful sync, unless the trigger was a manual refresh or missed GCM messages
+ * - Runs start at least MIN_INTERVAL_MILLIS apart, except for manual refreshes
+ * - Triggers that arrive within COALESCE_MILLIS of each other, or while a run is in
+ *   progress, are merged into a single (follow-up) run
+ * Last sync times are read from the sync_state table (SyncState.getLastSyncTime()), on a
+ * background thread, so they match the stored rows and survive process restarts.
+ * Tables that are skipped as fresh, or deferred to a later run, are reported with
+ * SyncCoordinator.ACTION_ENTITY_SYNCED and EXTRA_SKIPPED, so receivers waiting for a table
+ * show the local data straight away instead of waiting for a sync that may be a minute away.
+ */
+public class SyncScheduler {
+    private static final String TAG = SyncScheduler.class.getName();
+
+    // Activity start: sync stale tables only
+    public static final int TRIGGER_STARTUP = 0;
+    // GCM messages were dropped by the server: sync the tables regardless of TTL
+    public static final int TRIGGER_GCM = 1;
+    // User refresh: sync the tables now, regardless of TTL and MIN_INTERVAL_MILLIS
+    public static final int TRIGGER_MANUAL = 2;
+
+    static final long MIN_INTERVAL_MILLIS = 60 * 1000L;
+    static final long COALESCE_MILLIS = 500;
+
+    static final String PREFERENCES = "gasp_sync_schedule";
+    static final String LAST_RUN_KEY = "last_run";
+
+    private static SyncScheduler sInstance;
+
+    private final Context mContext;
+    private final SharedPreferences mPreferences;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // Reads the last sync times from the database
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    // Accessed on the UI thread only
+    private final Set<SyncEntity<?>> mRequested = new LinkedHashSet<SyncEntity<?>>();
+    private final Set<SyncEntity<?>> mForced = new LinkedHashSet<SyncEntity<?>>();
+    private boolean mManual = false;
+    private boolean mScheduled = false;
+    private long mScheduledAt;
+    private boolean mLoading = false;
+
+    private final Runnable mRun = new Runnable() {
+        @Override
+        public void run() {
+            mScheduled = false;
+            loadAndRunRequested();
+        }
+    };
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (!mRequested.isEmpty()) {
+                // Triggers that arrived during the run
+                schedule(COALESCE_MILLIS);
+            }
+        }
+    };
+
+    private SyncScheduler(Context context) {
+        this.mContext = context.getApplicationContext();
+        this.mPreferences = mContext.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+
+        LocalBroadcastManager.getInstance(mContext)
+                .registerReceiver(mReceiver, new IntentFilter(SyncCoordinator.ACTION_SYNC_COMPLETED));
+    }
+
+    public static synchronized SyncScheduler getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncScheduler(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Request a sync of every Gasp table; may be called on any thread
+     *
+     * @param trigger TRIGGER_STARTUP, TRIGGER_GCM or TRIGGER_MANUAL
+     */
+    public void requestSync(int trigger) {
+        requestSync(trigger, SyncEntity.getAll());
+    }
+
+    /**
+     * Request a sync of some Gasp tables; may be called on any thread
+     *
+     * @param trigger  TRIGGER_STARTUP, TRIGGER_GCM or TRIGGER_MANUAL
+     * @param entities The tables to sync
+     */
+    public void requestSync(final int trigger, final Collection<? extends SyncEntity<?>> entities) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mRequested.addAll(entities);
+                if (trigger != TRIGGER_STARTUP) {
+                    mForced.addAll(entities);
+                }
+                mManual |= (trigger == TRIGGER_MANUAL);
+                schedule(COALESCE_MILLIS);
+            }
+        });
+    }
+
+    // Keeps the earliest time, so that e.g. a manual refresh does not wait for a deferred run
+    private void schedule(long delayMillis) {
+        long runAt = SystemClock.uptimeMillis() + delayMillis;
+        if (mScheduled && mScheduledAt <= runAt) {
+            return;
+        }
+        mHandler.removeCallbacks(mRun);
+        mScheduled = true;
+        mScheduledAt = runAt;
+        mHandler.postAtTime(mRun, runAt);
+    }
+
+    private void loadAndRunRequested() {
+        if (mLoading || SyncCoordinator.getInstance(mContext).isRunning()) {
+            // Picked up again when the last sync times are loaded, or the current run completes
+            return;
+        }
+        mLoading = true;
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Map<SyncEntity<?>, Long> lastSyncTimes = loadLastSyncTimes();
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mLoading = false;
+                        runRequested(lastSyncTimes);
+                    }
+                });
+            }
+        });
+    }
+
+    // Background thread: every table, so that triggers arriving meanwhile are covered too
+    private Map<SyncEntity<?>, Long> loadLastSyncTimes() {
+        Map<SyncEntity<?>, Long> lastSyncTimes = new HashMap<SyncEntity<?>, Long>();
+        for (SyncEntity<?> entity : SyncEntity.getAll()) {
+            GaspDataAdapter<?> dataAdapter = entity.newDataAdapter(mContext);
+            try {
+                dataAdapter.open();
+                lastSyncTimes.put(entity, dataAdapter.getSyncState().getLastSyncTime());
+            } catch (Exception e) {
+                // Treated as never synced
+                e.printStackTrace();
+            } finally {
+                dataAdapter.close();
+            }
+        }
+        return lastSyncTimes;
+    }
+
+    private void runRequested(Map<SyncEntity<?>, Long> lastSyncTimes) {
+        SyncCoordinator coordinator = SyncCoordinator.getInstance(mContext);
+        if (coordinator.isRunning()) {
+            // Picked up again when the current run completes
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<SyncEntity<?>> due = new ArrayList<SyncEntity<?>>();
+        for (SyncEntity<?> entity : mRequested) {
+            Long lastSync = lastSyncTimes.get(entity);
+            if (mForced.contains(entity) || isStale(lastSync != null ? lastSync : 0, entity.getTtlMillis(), now)) {
+                due.add(entity);
+            } else {
+                Log.d(TAG, "Skipping sync: " + entity + " is fresh");
+                sendSkipped(entity);
+            }
+        }
+        mRequested.retainAll(due);
+
+        if (due.isEmpty()) {
+            mForced.clear();
+            mManual = false;
+            return;
+        }
+
+        long wait = getWaitMillis(mPreferences.getLong(LAST_RUN_KEY, 0), now);
+        if (wait > 0 && !mManual) {
+            // Screens waiting for these tables show what is stored now; the sync follows when the wait is over
+            Log.d(TAG, "Deferring sync of " + due + " for " + wait + " ms");
+            for (SyncEntity<?> entity : due) {
+                sendSkipped(entity);
+            }
+            schedule(wait);
+            return;
+        }
+
+        mRequested.clear();
+        mForced.clear();
+        mManual = false;
+        mPreferences.edit().putLong(LAST_RUN_KEY, now).apply();
+        Log.i(TAG, "Syncing " + due);
+        coordinator.start(due);
+    }
+
+    private void sendSkipped(SyncEntity<?> entity) {
+        LocalBroadcastManager.getInstance(mContext).sendBroadcast(
+                new Intent(SyncCoordinator.ACTION_ENTITY_SYNCED)
+                        .putExtra(SyncCoordinator.EXTRA_ENTITY, entity.getName())
+                        .putExtra(SyncCoordinator.EXTRA_SUCCESS, true)
+                        .putExtra(SyncCoordinator.EXTRA_INSERTED, 0)
+                        .putExtra(SyncCoordinator.EXTRA_SKIPPED, true));
+    }
+
+    /**
+     * @param lastSync  Time of the last successful sync, or 0 if never
+     * @param ttlMillis How long a sync stays fresh
+     * @param now       Current time
+     * @return true if the table should be synced; also if the clock has gone backwards
+     */
+    static boolean isStale(long lastSync, long ttlMillis, long now) {
+        return now < lastSync || now - lastSync >= ttlMillis;
+    }
+
+    /**
+     * @param lastRun Time the last run started, or 0 if never
+     * @param now     Current time
+     * @return How long to wait before the next run may start, to keep MIN_INTERVAL_MILLIS between runs
+     */
+    static long getWaitMillis(long lastRun, long now) {
+        if (now < lastRun) {
+            return 0;
+        }
+        return Math.max(0, lastRun + MIN_INTERVAL_MILLIS - now);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.service;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.support.v4.content.LocalBroadcastManager;
+import android.support.v4.content.WakefulBroadcastReceiver;
+import android.util.Log;
+
+import com.appdynamics.demo.gasp.gcm.GCMIntentService;
+import com.appdynamics.demo.gasp.model.GaspDataObject;
+
+import java.util.Collections;
+
+/**
+ * Syncs one Gasp table (see SyncEntity) with the SyncEngine: in full, or just the row
+ * with the id in GCMIntentService.PARAM_ID
+ * GCM messages send batched updates (see newBatchedUpdateIntent()): the ids are buffered by the
+ * UpdateBatcher as the Intents arrive and fetched together on the worker thread.
+ * Everything runs to completion on the service's worker thread, so the service is not stopped
+ * mid-sync; full syncs broadcast SyncCoordinator.ACTION_ENTITY_SYNCED when they complete.
+ * Intents are redelivered if the process is killed first, and wake locks taken with
+ * WakefulBroadcastReceiver.startWakefulService() are released once the Intent is handled.
+ */
+public class SyncService extends IntentService {
+    private static final String TAG = SyncService.class.getName();
+
+    public static final String EXTRA_ENTITY = SyncCoordinator.EXTRA_ENTITY;
+    public static final String EXTRA_BATCHED = "batched";
+
+    public SyncService() {
+        super(SyncService.class.getName());
+        setIntentRedelivery(true);
+    }
+
+    /**
+     * @param entity Table name, e.g. GaspTables.REVIEWS
+     * @return Intent to sync every new row of the table
+     */
+    public static Intent newSyncIntent(Context context, String entity) {
+        return new Intent(context, SyncService.class).putExtra(EXTRA_ENTITY, entity);
+    }
+
+    /**
+     * @param entity Table name, e.g. GaspTables.REVIEWS
+     * @param id     Id of the new row
+     * @return Intent to fetch a single row of the table
+     */
+    public static Intent newUpdateIntent(Context context, String entity, int id) {
+        return newSyncIntent(context, entity).putExtra(GCMIntentService.PARAM_ID, id);
+    }
+
+    /**
+     * @param entity Table name, e.g. GaspTables.REVIEWS
+     * @param id     Id of the new row
+     * @return Intent to fetch the row with any others that arrive within UpdateBatcher.BATCH_WINDOW_MILLIS
+     */
+    public static Intent newBatchedUpdateIntent(Context context, String entity, int id) {
+        return newUpdateIntent(context, entity, id).putExtra(EXTRA_BATCHED, true);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Buffered on arrival, so that the first batched Intent handled picks up the ids of the others
+        if (intent != null && intent.getBooleanExtra(EXTRA_BATCHED, false)) {
+            SyncEntity<?> entity = SyncEntity.forName(intent.getStringExtra(EXTRA_ENTITY));
+            int id = intent.getIntExtra(GCMIntentService.PARAM_ID, 0);
+            if (entity != null && id != 0) {
+                UpdateBatcher.getInstance(this).add(entity, id);
+            }
+        }
+        return super.onStartCommand(intent, flags, startId);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        try {
+            String name = intent.getStringExtra(EXTRA_ENTITY);
+            SyncEntity<?> entity = SyncEntity.forName(name);
+            if (entity == null) {
+                Log.e(TAG, "Error - unknown entity: " + name);
+                return;
+            }
+
+            int id = intent.getIntExtra(GCMIntentService.PARAM_ID, 0);
+            if (intent.hasExtra(GCMIntentService.PARAM_ID) && id == 0) {
+                Log.d(TAG, "Error - invalid index");
+            } else if (intent.getBooleanExtra(EXTRA_BATCHED, false)) {
+                UpdateBatcher.getInstance(this).flush();
+            } else {
+                sync(entity, id);
+            }
+        } finally {
+            WakefulBroadcastReceiver.completeWakefulIntent(intent);
+        }
+    }
+
+    private <T extends GaspDataObject> void sync(final SyncEntity<T> entity, int id) {
+        SyncEngine syncEngine = SyncEngine.getInstance(this);
+        Log.i(TAG, "Using Gasp Server URI: " + syncEngine.getUri(entity));
+
+        if (id != 0) {
+            syncEngine.update(entity, Collections.singleton(id));
+            return;
+        }
+
+        syncEngine.newFullSync(entity, new PagedSync.Listener<T>() {
+            @Override
+            public void onRowSynced(T row) {
+            }
+
+            @Override
+            public void onSyncCompleted(boolean success, int inserted) {
+                Log.i(TAG, "Sync " + entity + (success ? " completed" : " failed") + ": loaded " + inserted);
+                LocalBroadcastManager.getInstance(SyncService.this)
+                        .sendBroadcast(new Intent(SyncCoordinator.ACTION_ENTITY_SYNCED)
+                                .putExtra(SyncCoordinator.EXTRA_ENTITY, entity.getName())
+                                .putExtra(SyncCoordinator.EXTRA_SUCCESS, success)
+                                .putExtra(SyncCoordinator.EXTRA_INSERTED, inserted));
+            }
+        }, null).run();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2013 Mark Prichard
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appdynamics.demo.gasp.service;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.appdynamics.eumagent.runtime.Instrumentation;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Buffers the ids of new rows from GCM messages per table for BATCH_WINDOW_MILLIS, then fetches
+ * and stores each table's rows together (see SyncEngine.update()), so a burst of pushes costs a
+ * few requests and transactions instead of one of each per row.
+ * Runs inside SyncService: ids are added as their wakeful Intents arrive, and the first Intent to
+ * reach the worker thread flushes every id buffered by the end of the window. Each Intent keeps
+ * its wake lock, and the service stays started, until then, so buffered ids are not lost with
+ * the process.
+ */
+class UpdateBatcher {
+    private static final String TAG = UpdateBatcher.class.getName();
+
+    static final long BATCH_WINDOW_MILLIS = 2000;
+
+    private static UpdateBatcher sInstance;
+
+    private final Context mContext;
+
+    // Guarded by this
+    private final Map<SyncEntity<?>, Set<Integer>> mPending = new HashMap<SyncEntity<?>, Set<Integer>>();
+    private long mFirstAddedAt;
+
+    private UpdateBatcher(Context context) {
+        this.mContext = context.getApplicationContext();
+    }
+
+    static synchronized UpdateBatcher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new UpdateBatcher(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Buffer the id of a new row, to be fetched with the next batch; may be called on any thread
+     *
+     * @param entity The table
+     * @param id     Id of the new row
+     */
+    synchronized void add(SyncEntity<?> entity, int id) {
+        if (mPending.isEmpty()) {
+            mFirstAddedAt = SystemClock.elapsedRealtime();
+        }
+        Set<Integer> ids = mPending.get(entity);
+        if (ids == null) {
+            ids = new LinkedHashSet<Integer>();
+            mPending.put(entity, ids);
+        }
+        ids.add(id);
+    }
+
+    /**
+     * Wait until BATCH_WINDOW_MILLIS after the first buffered id, then fetch and store every
+     * buffered id. Returns at once if nothing is buffered (an earlier flush took the ids).
+     * Blocks: call on a background thread.
+     */
+    void flush() {
+        long wait;
+        synchronized (this) {
+            if (mPending.isEmpty()) {
+                return;
+            }
+            wait = mFirstAddedAt + BATCH_WINDOW_MILLIS - SystemClock.elapsedRealtime();
+        }
+        if (wait > 0) {
+            SystemClock.sleep(wait);
+        }
+
+        Map<SyncEntity<?>, Set<Integer>> batches;
+        synchronized (this) {
+            // Ids added from now on go into the next batch
+            batches = new HashMap<SyncEntity<?>, Set<Integer>>(mPending);
+            mPending.clear();
+        }
+
+        SyncEngine syncEngine = SyncEngine.getInstance(mContext);
+        for (Map.Entry<SyncEntity<?>, Set<Integer>> batch : batches.entrySet()) {
+            int inserted = syncEngine.update(batch.getKey(), batch.getValue());
+            Log.i(TAG, "Batched update of " + batch.getValue().size() + " " + batch.getKey()
+                    + " ids: loaded " + inserted);
+            Instrumentation.reportMetric("Gasp GCM Batch Size", batch.getValue().size());
+        }
+    }
+}
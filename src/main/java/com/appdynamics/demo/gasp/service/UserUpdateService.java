@@ -1,91 +0,0 @@
-/*
- * Copyright (c) 2013 Mark Prichard
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.appdynamics.demo.gasp.service;
-
-import android.app.IntentService;
-import android.content.Intent;
-import android.content.SharedPreferences;
-import android.net.Uri;
-import android.preference.PreferenceManager;
-import android.util.Log;
-
-import com.appdynamics.demo.gasp.R;
-import com.appdynamics.demo.gasp.adapter.UserDataAdapter;
-import com.appdynamics.demo.gasp.gcm.GCMIntentService;
-import com.appdynamics.demo.gasp.model.User;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-
-import java.lang.reflect.Type;
-
-public class UserUpdateService extends IntentService implements IRESTListener {
-    private static final String TAG = UserUpdateService.class.getName();
-
-    private Uri mGaspUsersUri;
-
-    private void getGaspUsersUriSharedPreferences() {
-        PreferenceManager.setDefaultValues(this, R.xml.preferences, false);
-        SharedPreferences gaspSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-        String gaspUsersUri = gaspSharedPreferences.getString(getString(R.string.gasp_server_uri_preferences), "")
-                + getString(R.string.gasp_users_location);
-
-        this.mGaspUsersUri = Uri.parse(gaspUsersUri);
-    }
-
-    public UserUpdateService() {
-        super("UserUpdateService");
-    }
-
-    @Override
-    protected void onHandleIntent(Intent intent) {
-        int index = intent.getIntExtra(GCMIntentService.PARAM_ID, 0);
-
-        if (index == 0) {
-            Log.d(TAG, "Error - invalid index");
-        } else {
-            getGaspUsersUriSharedPreferences();
-
-            AsyncRESTClient asyncRestCall = new AsyncRESTClient(mGaspUsersUri, this);
-            asyncRestCall.getIndex(index);
-        }
-    }
-
-    @Override
-    public void onCompleted(String result) {
-        Log.i(TAG, "Response:" + result + '\n');
-
-        if (result != null) {
-            try {
-                Gson gson = new Gson();
-                Type type = new TypeToken<User>() {
-                }.getType();
-                User mUser = gson.fromJson(result, type);
-
-                UserDataAdapter usersDB = new UserDataAdapter(getApplicationContext());
-                usersDB.open();
-                usersDB.insert(mUser);
-                usersDB.close();
-
-                String resultTxt = "Loaded user: " + mUser.getId();
-                Log.i(TAG, resultTxt + '\n');
-
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-    }
-}
@@ -0,0 +1,229 @@
+package com.appdynamics.demo.gasp.utils;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Copyright (c) 2013 Mark Prichard
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+public class HttpCompression {
+    private static final String TAG = HttpCompression.class.getName();
+
+    public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    public static final String ENCODING_GZIP = "gzip";
+
+    // Response bytes as received on the wire and as decoded
+    private static final AtomicLong sBytesReceived = new AtomicLong();
+    private static final AtomicLong sBytesDecoded = new AtomicLong();
+
+    // Request body bytes before and after encoding
+    private static final AtomicLong sBytesEncoded = new AtomicLong();
+    private static final AtomicLong sBytesSent = new AtomicLong();
+
+    /**
+     * Request gzip responses from an Apache HttpClient and decode them transparently
+     * @param client the HTTP client
+     */
+    public static void enableGzip(AbstractHttpClient client) {
+        client.addRequestInterceptor(new HttpRequestInterceptor() {
+            @Override
+            public void process(HttpRequest request, HttpContext context) {
+                if (!request.containsHeader(HEADER_ACCEPT_ENCODING)) {
+                    request.addHeader(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+                }
+            }
+        });
+        client.addResponseInterceptor(new HttpResponseInterceptor() {
+            @Override
+            public void process(HttpResponse response, HttpContext context) {
+                HttpEntity entity = response.getEntity();
+                if (entity != null) {
+                    response.setEntity(new DecodingEntity(entity));
+                }
+            }
+        });
+    }
+
+    /**
+     * Request gzip responses from an HttpURLConnection: read them with getInputStream()
+     * (setting the header disables the platform's own decoding, so the bytes can be counted)
+     * @param conn the connection, before it is connected
+     */
+    public static void acceptGzip(HttpURLConnection conn) {
+        conn.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+    }
+
+    /**
+     * Get the decoded response body of an HttpURLConnection
+     * @param conn the connection
+     * @return the response body, decompressed if necessary
+     * @throws IOException
+     */
+    public static InputStream getInputStream(HttpURLConnection conn) throws IOException {
+        return decode(conn.getInputStream(), ENCODING_GZIP.equalsIgnoreCase(conn.getContentEncoding()));
+    }
+
+    /**
+     * Gzip a request body (send with Content-Encoding: gzip)
+     * @param body the request body
+     * @return the compressed body
+     * @throws IOException
+     */
+    public static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 2 + 32);
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+        byte[] compressed = bytes.toByteArray();
+        sBytesEncoded.addAndGet(body.length);
+        sBytesSent.addAndGet(compressed.length);
+        return compressed;
+    }
+
+    private static InputStream decode(InputStream in, boolean gzip) throws IOException {
+        InputStream received = new CountingInputStream(in, sBytesReceived);
+        return new CountingInputStream(gzip ? new GZIPInputStream(received) : received, sBytesDecoded);
+    }
+
+    /**
+     * @return response bytes received on the wire (compressed or not)
+     */
+    public static long getBytesReceived() {
+        return sBytesReceived.get();
+    }
+
+    /**
+     * @return response bytes after decompression
+     */
+    public static long getBytesDecoded() {
+        return sBytesDecoded.get();
+    }
+
+    /**
+     * @return request body bytes before gzip()
+     */
+    public static long getBytesEncoded() {
+        return sBytesEncoded.get();
+    }
+
+    /**
+     * @return request body bytes after gzip()
+     */
+    public static long getBytesSent() {
+        return sBytesSent.get();
+    }
+
+    /**
+     * Replaces a gzip-encoded response entity with its decompressed content
+     * Passes connection release and abort through to the HttpClient's managed entity
+     */
+    private static class DecodingEntity extends HttpEntityWrapper implements ConnectionReleaseTrigger {
+        private final boolean mGzip;
+
+        DecodingEntity(HttpEntity entity) {
+            super(entity);
+            Header encoding = entity.getContentEncoding();
+            this.mGzip = (encoding != null) && ENCODING_GZIP.equalsIgnoreCase(encoding.getValue());
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return decode(wrappedEntity.getContent(), mGzip);
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return mGzip ? null : super.getContentEncoding();
+        }
+
+        @Override
+        public long getContentLength() {
+            // Decompressed length is unknown
+            return mGzip ? -1 : super.getContentLength();
+        }
+
+        @Override
+        public void releaseConnection() throws IOException {
+            if (wrappedEntity instanceof ConnectionReleaseTrigger) {
+                ((ConnectionReleaseTrigger) wrappedEntity).releaseConnection();
+            } else {
+                consumeContent();
+            }
+        }
+
+        @Override
+        public void abortConnection() throws IOException {
+            if (wrappedEntity instanceof ConnectionReleaseTrigger) {
+                ((ConnectionReleaseTrigger) wrappedEntity).abortConnection();
+            }
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong mCounter;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.mCounter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCounter.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int n = super.read(buffer, offset, count);
+            if (n > 0) {
+                mCounter.addAndGet(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long n = super.skip(count);
+            mCounter.addAndGet(n);
+            return n;
+        }
+    }
+}